@@ -12,7 +12,7 @@ class DumpSpeedActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_dump_speed)
 
-        val array = intArrayOf(3000, 4000, 5000, 6000)
+        val array = intArrayOf(3000, 4000, 5000, 6000, 10000)
         findViewById<ViewGroup>(R.id.root).apply {
 
             array.forEach {count->
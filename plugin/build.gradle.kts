@@ -20,7 +20,37 @@ tasks {
     }
 }
 
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
+
 java {
     sourceCompatibility = JavaVersion.VERSION_1_8
     targetCompatibility = JavaVersion.VERSION_1_8
-}
\ No newline at end of file
+}
+// JVM benchmarks of the parser, run with e.g. ./gradlew :plugin:displayInfoBenchmark
+val benchmark: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath
+}
+
+tasks.register<JavaExec>("displayInfoBenchmark") {
+    group = "benchmark"
+    description = "Compares the DisplayInfo extraction probing aliases with DisplayInfoResolver"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.android.layoutinspectorv2.benchmark.DisplayInfoBenchmarkKt")
+}
+
+tasks.register<JavaExec>("captureCompressionBenchmark") {
+    group = "benchmark"
+    description = "Compares the size and the load time of raw and deflated capture sections"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.android.layoutinspectorv2.benchmark.CaptureCompressionBenchmarkKt")
+}
+
+tasks.register<JavaExec>("previewCodecBenchmark") {
+    group = "benchmark"
+    description = "Compares the size and the decoding time of PNG and QOI previews"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.android.layoutinspectorv2.benchmark.PreviewCodecBenchmarkKt")
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.benchmark
+
+import com.android.layoutinspectorv2.LayoutInspectorCaptureOptions
+import com.android.layoutinspectorv2.ProtocolVersion
+import com.android.layoutinspectorv2.parser.LayoutFileContainer
+import com.android.layoutinspectorv2.parser.LayoutFileDataParser
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+private const val VIEWS = 10000
+private const val WARMUP_ROUNDS = 5
+private const val ROUNDS = 20
+private val LEVELS = arrayOf<Int?>(null, 1, 6, 9)
+
+/**
+ * Compares the size and the load time of captures of 10k views with raw and deflated sections,
+ * at the levels LayoutInspectorBridge.captureDeflateLevel can be set to.
+ *
+ * Run with `./gradlew :plugin:captureCompressionBenchmark`.
+ */
+fun main() {
+    val preview = SyntheticDumps.preview()
+    run(ProtocolVersion.Version1, SyntheticDumps.v1(VIEWS), preview)
+    run(ProtocolVersion.Version2, SyntheticDumps.v2(VIEWS), preview)
+}
+
+private fun run(version: ProtocolVersion, hierarchy: ByteArray, preview: ByteArray) {
+    val options = LayoutInspectorCaptureOptions()
+    options.version = version
+    for (level in LEVELS) {
+        val builder = LayoutFileContainer.Builder()
+            .addSection(LayoutFileContainer.SECTION_OPTIONS, options.toString().toByteArray(StandardCharsets.UTF_8))
+        var writeTime = System.nanoTime()
+        if (level == null) {
+            builder.addSection(LayoutFileContainer.SECTION_HIERARCHY, hierarchy)
+                .addSection(LayoutFileContainer.SECTION_PREVIEW, preview)
+        } else {
+            builder.addDeflatedSection(LayoutFileContainer.SECTION_HIERARCHY, hierarchy, level)
+                .addDeflatedSection(LayoutFileContainer.SECTION_PREVIEW, preview, level)
+        }
+        val out = ByteArrayOutputStream()
+        builder.writeTo(out)
+        writeTime = System.nanoTime() - writeTime
+        val file = out.toByteArray()
+
+        val load = measure { LayoutFileDataParser.parseFromBuffer(ByteBuffer.wrap(file)).node!!.hashCode() }
+        println(String.format(
+            "%s, %s: %d KB (hierarchy %d KB, preview %d KB), write %.1f ms, load %.2f ms",
+            version, if (level == null) "raw" else "deflate $level", file.size / 1024, hierarchy.size / 1024,
+            preview.size / 1024, writeTime / 1e6, load
+        ))
+    }
+}
+
+/** Returns the average time in milliseconds of running [block]. */
+private fun measure(block: () -> Int): Double {
+    var sink = 0
+    for (i in 0 until WARMUP_ROUNDS) {
+        sink += block()
+    }
+    val start = System.nanoTime()
+    for (i in 0 until ROUNDS) {
+        sink += block()
+    }
+    val elapsed = System.nanoTime() - start
+    if (sink == 42) {
+        println()
+    }
+    return elapsed / 1e6 / ROUNDS
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.benchmark
+
+import com.android.layoutinspectorv2.ProtocolVersion
+import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.parser.DisplayInfoFactory
+import com.android.layoutinspectorv2.parser.DisplayInfoResolver
+import com.android.layoutinspectorv2.parser.ViewNodeParser
+
+private const val VIEWS = 10000
+private const val WARMUP_ROUNDS = 20
+private const val ROUNDS = 50
+
+/**
+ * Compares the [com.android.layoutinspectorv2.model.DisplayInfo] extraction probing every alias
+ * with the per capture [DisplayInfoResolver], on the nodes of 10k views dumps.
+ *
+ * Run with `./gradlew :plugin:displayInfoBenchmark`.
+ */
+fun main() {
+    run("v1", ViewNodeParser.parse(SyntheticDumps.v1(VIEWS), ProtocolVersion.Version1)!!)
+    run("v2", ViewNodeParser.parse(SyntheticDumps.v2(VIEWS), ProtocolVersion.Version2)!!)
+}
+
+private fun run(protocol: String, root: ViewNode) {
+    val nodes = ArrayList<ViewNode>()
+    collect(root, nodes)
+    val names = HashSet<String>()
+    nodes.forEach { names.addAll(it.namedProperties.keys) }
+    val resolver = DisplayInfoResolver.forNames(names)
+
+    val probing = measure(nodes) { DisplayInfoFactory.createDisplayInfoFromNode(it) }
+    val resolved = measure(nodes) { resolver.createDisplayInfo(it) }
+    println(String.format(
+        "%s, %d nodes: probing %.2f ms, resolver %.2f ms (%.1fx)",
+        protocol, nodes.size, probing, resolved, probing / resolved
+    ))
+}
+
+/** Returns the average time in milliseconds of running [block] over all the [nodes]. */
+private fun measure(nodes: List<ViewNode>, block: (ViewNode) -> Any): Double {
+    var sink = 0
+    for (i in 0 until WARMUP_ROUNDS) {
+        nodes.forEach { sink += block(it).hashCode() }
+    }
+    val start = System.nanoTime()
+    for (i in 0 until ROUNDS) {
+        nodes.forEach { sink += block(it).hashCode() }
+    }
+    val elapsed = System.nanoTime() - start
+    if (sink == 42) {
+        println()
+    }
+    return elapsed / 1e6 / ROUNDS
+}
+
+private fun collect(node: ViewNode, nodes: MutableList<ViewNode>) {
+    nodes.add(node)
+    node.children.forEach { collect(it, nodes) }
+}
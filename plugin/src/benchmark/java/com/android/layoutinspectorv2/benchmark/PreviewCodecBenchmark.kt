@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.benchmark
+
+import com.android.layoutinspectorv2.parser.PreviewImageDecoder
+import com.android.layoutinspectorv2.parser.QoiCodec
+import java.awt.Color
+import java.awt.Font
+import java.awt.RenderingHints
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.Random
+import javax.imageio.ImageIO
+
+private const val WARMUP_ROUNDS = 5
+private const val ROUNDS = 20
+
+/**
+ * Compares the size and the decoding time of 1440x3200 previews stored as the PNG returned by the
+ * device and as the QOI images captures can be saved with.
+ *
+ * Run with `./gradlew :plugin:previewCodecBenchmark`.
+ */
+fun main() {
+    run("boxes", SyntheticDumps.preview())
+    run("boxes and text", textPreview())
+}
+
+private fun run(name: String, png: ByteArray) {
+    val qoi = PreviewImageDecoder.encodePreview(png)
+    check(QoiCodec.isQoi(qoi, qoi.size)) { "$name was not encoded as QOI" }
+    val pngTime = measure { PreviewImageDecoder.decode(png)!!.width }
+    val qoiTime = measure { PreviewImageDecoder.decode(qoi)!!.width }
+    println(String.format(
+        "%s: png %d KB %.1f ms, qoi %d KB %.1f ms (%.1fx size, %.1fx faster)",
+        name, png.size / 1024, pngTime, qoi.size / 1024, qoiTime,
+        qoi.size.toDouble() / png.size, pngTime / qoiTime
+    ))
+}
+
+/** Returns the average time in milliseconds of running [block]. */
+private fun measure(block: () -> Int): Double {
+    var sink = 0
+    for (i in 0 until WARMUP_ROUNDS) {
+        sink += block()
+    }
+    val start = System.nanoTime()
+    for (i in 0 until ROUNDS) {
+        sink += block()
+    }
+    val elapsed = System.nanoTime() - start
+    if (sink == 42) {
+        println()
+    }
+    return elapsed / 1e6 / ROUNDS
+}
+
+/** The boxes of [SyntheticDumps.preview] with rows of anti-aliased text, as in a list of messages. */
+private fun textPreview(): ByteArray {
+    val image = ImageIO.read(ByteArrayInputStream(SyntheticDumps.preview()))
+    val random = Random(0)
+    val g = image.createGraphics()
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON)
+    g.font = Font(Font.SANS_SERIF, Font.PLAIN, 42)
+    for (y in 60 until image.height step 80) {
+        g.color = Color(random.nextInt(0x808080))
+        g.drawString("Item ${random.nextInt()} lorem ipsum dolor sit amet", 40, y)
+    }
+    g.dispose()
+    val out = ByteArrayOutputStream()
+    ImageIO.write(image, "png", out)
+    return out.toByteArray()
+}
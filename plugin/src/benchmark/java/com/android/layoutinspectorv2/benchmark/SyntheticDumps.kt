@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.benchmark
+
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.util.Random
+import javax.imageio.ImageIO
+
+/**
+ * Generates view hierarchy dumps shaped like the ones of the benchmark app: a few containers
+ * holding [views] children in total, with the properties a device reports for each view.
+ */
+object SyntheticDumps {
+    private val CLASSES = arrayOf(
+        "android.widget.FrameLayout",
+        "android.widget.LinearLayout",
+        "android.widget.TextView",
+        "android.view.View",
+        "android.widget.ImageView"
+    )
+    private const val CONTAINERS = 10
+
+    /** A dump in the v2 protocol, as written by ViewHierarchyEncoder. */
+    @JvmStatic
+    fun v2(views: Int, seed: Long = 0): ByteArray {
+        val random = Random(seed)
+        val encoder = Encoder()
+        encoder.beginView("com.android.internal.policy.DecorView", 0)
+        writeV2Properties(encoder, random)
+        encoder.property("meta:__childCount__", CONTAINERS)
+        for (i in 0 until CONTAINERS) {
+            encoder.key("meta:__child__$i")
+            encoder.beginView(CLASSES[1], i + 1)
+            writeV2Properties(encoder, random)
+            val children = views / CONTAINERS
+            encoder.property("meta:__childCount__", children)
+            for (j in 0 until children) {
+                encoder.key("meta:__child__$j")
+                encoder.beginView(CLASSES[random.nextInt(CLASSES.size)], random.nextInt())
+                writeV2Properties(encoder, random)
+                encoder.endMap()
+            }
+            encoder.endMap()
+        }
+        encoder.endMap()
+        return encoder.finish()
+    }
+
+    /** The same kind of hierarchy in the text v1 protocol. */
+    @JvmStatic
+    fun v1(views: Int, seed: Long = 0): ByteArray {
+        val random = Random(seed)
+        val sb = StringBuilder()
+        writeV1View(sb, 0, "com.android.internal.policy.DecorView", random)
+        for (i in 0 until CONTAINERS) {
+            writeV1View(sb, 1, CLASSES[1], random)
+            for (j in 0 until views / CONTAINERS) {
+                writeV1View(sb, 2, CLASSES[random.nextInt(CLASSES.size)], random)
+            }
+        }
+        sb.append("DONE.\n")
+        return sb.toString().toByteArray()
+    }
+
+    /** A PNG screenshot of flat boxes, close to a device screenshot of a list. */
+    @JvmStatic
+    fun preview(width: Int = 1440, height: Int = 3200, seed: Long = 0): ByteArray {
+        val random = Random(seed)
+        val image = BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+        val g = image.createGraphics()
+        g.color = Color.WHITE
+        g.fillRect(0, 0, image.width, image.height)
+        for (i in 0 until 400) {
+            g.color = Color(random.nextInt(0xFFFFFF))
+            g.fillRect(random.nextInt(image.width), random.nextInt(image.height), random.nextInt(400), random.nextInt(120))
+        }
+        g.dispose()
+        val out = ByteArrayOutputStream()
+        ImageIO.write(image, "png", out)
+        return out.toByteArray()
+    }
+
+    private fun writeV2Properties(encoder: Encoder, random: Random) {
+        encoder.property("id", if (random.nextInt(3) == 0) "NO_ID" else "id/view_${random.nextInt(100)}")
+        encoder.property("layout:left", random.nextInt(1080))
+        encoder.property("layout:top", random.nextInt(2000))
+        encoder.property("layout:width", random.nextInt(1080))
+        encoder.property("layout:height", random.nextInt(200))
+        encoder.property("scrolling:scrollX", 0)
+        encoder.property("scrolling:scrollY", 0)
+        encoder.property("drawing:willNotDraw", random.nextBoolean())
+        encoder.property("drawing:clipChildren", true)
+        encoder.property("drawing:translationX", 0f)
+        encoder.property("drawing:translationY", 0f)
+        encoder.property("drawing:scaleX", 1f)
+        encoder.property("drawing:scaleY", 1f)
+        encoder.property("drawing:alpha", 1f)
+        encoder.property("drawing:elevation", 0f)
+        encoder.property("misc:visibility", 0)
+        encoder.property("misc:transitionName", "null")
+        encoder.property("focus:isFocused", false)
+        encoder.property("focus:hasFocus", false)
+        encoder.property("measurement:measuredWidth", random.nextInt(1080))
+        encoder.property("measurement:measuredHeight", random.nextInt(200))
+        encoder.property("layout:layoutDirection", 0)
+        encoder.property("padding:paddingLeft", 0)
+        encoder.property("padding:paddingTop", 0)
+        encoder.property("accessibility:contentDescription", "null")
+        encoder.property("text:text", "Button ${random.nextInt(1000)}")
+    }
+
+    private fun writeV1View(sb: StringBuilder, depth: Int, name: String, random: Random) {
+        for (i in 0 until depth) {
+            sb.append(' ')
+        }
+        sb.append(name).append('@').append(Integer.toHexString(random.nextInt()))
+        appendV1(sb, "mID", if (random.nextInt(3) == 0) "NO_ID" else "id/view_${random.nextInt(100)}")
+        appendV1(sb, "layout:mLeft", random.nextInt(1080).toString())
+        appendV1(sb, "layout:mTop", random.nextInt(2000).toString())
+        appendV1(sb, "layout:getWidth()", random.nextInt(1080).toString())
+        appendV1(sb, "layout:getHeight()", random.nextInt(200).toString())
+        appendV1(sb, "scrolling:mScrollX", "0")
+        appendV1(sb, "scrolling:mScrollY", "0")
+        appendV1(sb, "drawing:willNotDraw()", random.nextBoolean().toString())
+        appendV1(sb, "drawing:getClipChildren()", "true")
+        appendV1(sb, "drawing:getTranslationX()", "0.0")
+        appendV1(sb, "drawing:getTranslationY()", "0.0")
+        appendV1(sb, "drawing:getScaleX()", "1.0")
+        appendV1(sb, "drawing:getScaleY()", "1.0")
+        appendV1(sb, "drawing:getAlpha()", "1.0")
+        appendV1(sb, "misc:getVisibility()", "VISIBLE")
+        appendV1(sb, "focus:isFocused()", "false")
+        appendV1(sb, "measurement:mMeasuredWidth", random.nextInt(1080).toString())
+        appendV1(sb, "measurement:mMeasuredHeight", random.nextInt(200).toString())
+        appendV1(sb, "accessibility:getContentDescription()", "null")
+        appendV1(sb, "text:mText", "Button ${random.nextInt(1000)}")
+        sb.append('\n')
+    }
+
+    private fun appendV1(sb: StringBuilder, name: String, value: String) {
+        sb.append(' ').append(name).append('=').append(value.length).append(',').append(value)
+    }
+
+    /** Writes the v2 signatures, and the string table of the keys at the end. */
+    private class Encoder {
+        private val mBytes = ByteArrayOutputStream()
+        private val mOut = DataOutputStream(mBytes)
+        private val mKeys = LinkedHashMap<String, Short>()
+
+        fun key(name: String) {
+            val id = mKeys.getOrPut(name) { (mKeys.size + 1).toShort() }
+            mOut.writeByte('S'.code)
+            mOut.writeShort(id.toInt())
+        }
+
+        fun beginView(name: String, hash: Int) {
+            mOut.writeByte('M'.code)
+            property("meta:__name__", name)
+            property("meta:__hash__", hash)
+        }
+
+        fun endMap() {
+            mOut.writeByte('S'.code)
+            mOut.writeShort(0)
+        }
+
+        fun property(name: String, value: Any) {
+            key(name)
+            when (value) {
+                is Boolean -> {
+                    mOut.writeByte('Z'.code)
+                    mOut.writeByte(if (value) 1 else 0)
+                }
+                is Int -> {
+                    mOut.writeByte('I'.code)
+                    mOut.writeInt(value)
+                }
+                is Float -> {
+                    mOut.writeByte('F'.code)
+                    mOut.writeFloat(value)
+                }
+                else -> string(value.toString())
+            }
+        }
+
+        private fun string(value: String) {
+            val bytes = value.toByteArray()
+            mOut.writeByte('R'.code)
+            mOut.writeShort(bytes.size)
+            mOut.write(bytes)
+        }
+
+        fun finish(): ByteArray {
+            mOut.writeByte('M'.code)
+            for ((name, id) in mKeys) {
+                mOut.writeByte('S'.code)
+                mOut.writeShort(id.toInt())
+                string(name)
+            }
+            endMap()
+            return mBytes.toByteArray()
+        }
+    }
+}
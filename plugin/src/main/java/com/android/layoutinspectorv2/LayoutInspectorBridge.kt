@@ -16,86 +16,232 @@
 package com.android.layoutinspectorv2
 
 import com.android.layoutinspectorv2.model.ClientWindow
+import com.android.layoutinspectorv2.model.LayoutFileData
+import com.android.layoutinspectorv2.model.MultiWindowSnapshot
 import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.parser.LayoutFileContainer
+import com.android.layoutinspectorv2.parser.LayoutFileDataParser
+import com.android.layoutinspectorv2.parser.PreviewImageDecoder
 import com.android.layoutinspectorv2.parser.ViewNodeParser
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
 import java.io.IOException
-import java.io.ObjectOutputStream
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
 import java.util.concurrent.TimeUnit
 
 object LayoutInspectorBridge {
     @JvmStatic
     val V2_MIN_API = 23
 
+    /**
+     * The most windows [captureWindows] captures at a time. The app dumps them on its UI thread,
+     * so more would only wait there.
+     */
+    const val MAX_CONCURRENT_WINDOW_CAPTURES = 3
+
+    /**
+     * Deflate level of the hierarchy and preview sections of new captures, or null to store them
+     * raw. Deflating shrinks the hierarchy several times over at the cost of inflating it on load,
+     * see the README. Defaults to the `layoutinspectorv2.capture.deflate.level` system property.
+     */
+    @JvmStatic
+    var captureDeflateLevel: Int? = Integer.getInteger("layoutinspectorv2.capture.deflate.level")
+
+    /**
+     * Whether new captures store their preview as a QOI image rather than the PNG returned by the
+     * device, see [PreviewImageDecoder.encodePreview]. Defaults to the
+     * `layoutinspectorv2.capture.preview.qoi` system property.
+     */
+    @JvmStatic
+    var captureQoiPreview: Boolean = java.lang.Boolean.getBoolean("layoutinspectorv2.capture.preview.qoi")
+
     @JvmStatic
     fun captureView(
         window: ClientWindow, options: LayoutInspectorCaptureOptions
     ): LayoutInspectorResult {
-        val hierarchy =
-            window.loadWindowData(options, 20, TimeUnit.SECONDS) ?: return LayoutInspectorResult(
-                null,
-                "There was a timeout error capturing the layout data from the device.\n" +
-                "The device may be too slow, the captured view may be too complex, or the view may contain animations.\n\n" +
-                "Please retry with a simplified view and ensure the device is responsive."
-            )
+        val capture = try {
+            loadCapture(window, options)
+        } catch (e: CaptureException) {
+            return LayoutInspectorResult(null, e.message!!)
+        }
+        return assemble(listOf(capture), listOf(options))
+    }
 
-        var root: ViewNode?
+    /**
+     * Captures [windows], bottom first, as one capture of several windows, see
+     * [MultiWindowSnapshot]. Each window is captured with the [options] at its index, and at
+     * most [MAX_CONCURRENT_WINDOW_CAPTURES] windows are captured at a time. A window that cannot
+     * be captured, e.g. a toast that went away meanwhile, is left out.
+     */
+    @JvmStatic
+    fun captureWindows(
+        windows: List<ClientWindow>, options: List<LayoutInspectorCaptureOptions>
+    ): LayoutInspectorResult {
+        require(windows.isNotEmpty() && windows.size == options.size) { "One options per window expected" }
+        val pending = windows.indices.map { i -> windowCaptureExecutor.submit(Callable { loadCapture(windows[i], options[i]) }) }
+        val captures = ArrayList<Capture>(windows.size)
+        val captureOptions = ArrayList<LayoutInspectorCaptureOptions>(windows.size)
+        var error: String? = null
         try {
-            root = ViewNodeParser.parse(hierarchy, options.version)
-        } catch (e: StringIndexOutOfBoundsException) {
-            return LayoutInspectorResult(null, "Unexpected error: $e")
-        } catch (e: IOException) {
-            return LayoutInspectorResult(null, "Unexpected error: $e")
+            for ((i, future) in pending.withIndex()) {
+                try {
+                    captures.add(future.get())
+                    captureOptions.add(options[i])
+                } catch (e: ExecutionException) {
+                    error = error ?: e.cause?.message ?: e.toString()
+                }
+            }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            return LayoutInspectorResult(null, "Interrupted while capturing windows")
+        } finally {
+            // no-op once captured, stops the pending captures when interrupted
+            pending.forEach { it.cancel(true) }
+        }
+        if (captures.isEmpty()) {
+            return LayoutInspectorResult(null, error ?: "Unable to capture any window")
         }
+        return assemble(captures, captureOptions)
+    }
 
-        if (root == null) {
+    /**
+     * Assembles the file of [captures], bottom first, along with their snapshot. The first
+     * capture is stored in the sections of the file and the others in its
+     * [LayoutFileContainer.SECTION_WINDOWS].
+     */
+    private fun assemble(captures: List<Capture>, options: List<LayoutInspectorCaptureOptions>): LayoutInspectorResult {
+        // decoded for the snapshot while the file is assembled
+        val images = captures.map { PreviewImageDecoder.decodeAsync(ByteArrayInputStream(it.preview)) }
+        val bytes = try {
+            val windows = if (captures.size > 1) {
+                LayoutFileContainer.writeWindows(captures.indices.drop(1).map { writeContainer(captures[it], options[it], null) })
+            } else {
+                null
+            }
+            writeContainer(captures[0], options[0], windows)
+        } catch (e: IOException) {
+            images.forEach { it.cancel(true) }
             return LayoutInspectorResult(
                 null,
-                "Unable to parse view hierarchy"
+                "Unexpected error while saving hierarchy snapshot: $e"
             )
+        } catch (e: IllegalArgumentException) {
+            images.forEach { it.cancel(true) }
+            return LayoutInspectorResult(null, "Unexpected error while saving hierarchy snapshot: $e")
         }
 
-        //  Get the preview of the root node
-        val preview = window.loadViewImage(
-            root,
-            10,
-            TimeUnit.SECONDS
-        ) ?: return LayoutInspectorResult(
-            null,
-            "Unable to obtain preview image"
-        )
+        val windows = captures.indices.map { i ->
+            val bufferedImage = try {
+                PreviewImageDecoder.await(images[i])
+            } catch (e: IOException) {
+                // the editor reports it when it decodes the preview from the file
+                null
+            }
+            LayoutFileData(bufferedImage, captures[i].root, options[i])
+        }
+        val snapshot = if (windows.all { it.bufferedImage != null }) MultiWindowSnapshot.compose(windows) else null
+        return LayoutInspectorResult(bytes, "", snapshot)
+    }
 
-        val bytes = ByteArrayOutputStream(4096)
-        var output: ObjectOutputStream? = null
+    /** Returns the container of [capture], with the [windows] above it if not null. */
+    @Throws(IOException::class)
+    private fun writeContainer(capture: Capture, options: LayoutInspectorCaptureOptions, windows: ByteArray?): ByteArray {
+        val hierarchy = capture.hierarchy
+        val preview = capture.preview
+        val bytes = ByteArrayOutputStream(hierarchy.size + preview.size + (windows?.size ?: 0) + 4096)
+        val previewSection = if (captureQoiPreview) PreviewImageDecoder.encodePreview(preview) else preview
+        val level = captureDeflateLevel
+        val builder = LayoutFileContainer.Builder()
+            .addSection(LayoutFileContainer.SECTION_OPTIONS, options.toString().toByteArray(StandardCharsets.UTF_8))
+        if (level == null) {
+            builder.addSection(LayoutFileContainer.SECTION_HIERARCHY, hierarchy)
+                .addSection(LayoutFileContainer.SECTION_PREVIEW, previewSection)
+        } else {
+            builder.addDeflatedSection(LayoutFileContainer.SECTION_HIERARCHY, hierarchy, level)
+                .addDeflatedSection(LayoutFileContainer.SECTION_PREVIEW, previewSection, level)
+        }
+        if (windows != null) {
+            // the sections of each window are deflated already
+            builder.addSection(LayoutFileContainer.SECTION_WINDOWS, windows)
+        }
+        builder.writeTo(bytes)
+        return bytes.toByteArray()
+    }
 
-        try {
-            output = ObjectOutputStream(bytes)
-            output.writeUTF(options.toString())
+    /**
+     * Captures the hierarchy and the preview of [window] without assembling a capture file, e.g.
+     * to refresh an open editor. The message of the exception is shown to the user.
+     */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun captureSnapshot(window: ClientWindow, options: LayoutInspectorCaptureOptions): LayoutFileData {
+        val capture = loadCapture(window, options)
+        val image = PreviewImageDecoder.decode(capture.preview) ?: throw CaptureException("Unable to decode preview image")
+        return LayoutFileData(image, capture.root, options)
+    }
 
-            output.writeInt(hierarchy.size)
-            output.write(hierarchy)
+    private val windowCaptureExecutor =
+        AppExecutorUtil.createBoundedApplicationPoolExecutor("Window captures", MAX_CONCURRENT_WINDOW_CAPTURES)
 
-            output.writeInt(preview.size)
-            output.write(preview)
-        } catch (e: IOException) {
-            return LayoutInspectorResult(
-                null,
-                "Unexpected error while saving hierarchy snapshot: $e"
-            )
-        } finally {
-            try {
-                if (output != null) {
-                    output.close()
-                }
+    private class Capture(val hierarchy: ByteArray, val root: ViewNode, val preview: ByteArray)
+
+    private class CaptureException(message: String) : IOException(message)
+
+    /** Dumps and parses the hierarchy of [window] and loads the preview of its root. */
+    @Throws(CaptureException::class)
+    private fun loadCapture(window: ClientWindow, options: LayoutInspectorCaptureOptions): Capture {
+        val hierarchy = window.loadWindowData(options, 20, TimeUnit.SECONDS) ?: throw CaptureException(
+            "There was a timeout error capturing the layout data from the device.\n" +
+            "The device may be too slow, the captured view may be too complex, or the view may contain animations.\n\n" +
+            "Please retry with a simplified view and ensure the device is responsive."
+        )
+
+        // The root is the first view of the dump, so its preview is requested from the device
+        // while the rest of the hierarchy is parsed.
+        val rootId = ViewNodeParser.peekRoot(hierarchy, options.version)
+        val pendingPreview = rootId?.let { id ->
+            AppExecutorUtil.getAppExecutorService().submit(Callable { window.loadViewImage(id, 10, TimeUnit.SECONDS) })
+        }
+
+        val root: ViewNode
+        val preview: ByteArray?
+        try {
+            root = try {
+                // parsed as the editor would parse the file, see LayoutInspectorResult.snapshot
+                ViewNodeParser.parse(hierarchy, options.version, LayoutFileDataParser.SKIPPED_PROPERTIES,
+                    options.projection, lazyProperties = true, parallel = true)
+            } catch (e: StringIndexOutOfBoundsException) {
+                throw CaptureException("Unexpected error: $e")
             } catch (e: IOException) {
-                return LayoutInspectorResult(
-                    null,
-                    "Unexpected error while closing hierarchy snapshot: $e"
-                )
-            }
+                throw CaptureException("Unexpected error: $e")
+            } ?: throw CaptureException("Unable to parse view hierarchy")
 
+            //  Get the preview of the root node
+            preview = if (pendingPreview != null && rootId == root.toString()) {
+                awaitPreview(pendingPreview)
+            } else {
+                window.loadViewImage(root, 10, TimeUnit.SECONDS)
+            }
+        } finally {
+            // no-op once the preview is loaded, stops waiting for it when parsing failed
+            pendingPreview?.cancel(true)
         }
+        return Capture(hierarchy, root, preview ?: throw CaptureException("Unable to obtain preview image"))
+    }
 
-        return LayoutInspectorResult(bytes.toByteArray(), "")
+    /** Returns the preview loaded by [future], or null if loading it failed or was interrupted. */
+    private fun awaitPreview(future: Future<ByteArray?>): ByteArray? {
+        return try {
+            future.get()
+        } catch (e: ExecutionException) {
+            null
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            null
+        }
     }
 }
@@ -27,6 +27,7 @@ class LayoutInspectorCaptureOptions {
 
     var version = ProtocolVersion.Version1
     var title = ""
+    var projection = PropertyProjection.ALL
 
     override fun toString(): String {
         return serialize()
@@ -36,6 +37,9 @@ class LayoutInspectorCaptureOptions {
         val obj = JsonObject()
         obj.addProperty(VERSION, version.value)
         obj.addProperty(TITLE, title)
+        if (!projection.isIdentity) {
+            obj.add(PROJECTION, projection.toJson())
+        }
         return obj.toString()
     }
 
@@ -43,10 +47,12 @@ class LayoutInspectorCaptureOptions {
         val obj = JsonParser.parseString(json).asJsonObject
         version = ProtocolVersion.valueOf("Version${obj.get(VERSION).asString}")
         title = obj.get(TITLE).asString
+        projection = if (obj.has(PROJECTION)) PropertyProjection.fromJson(obj.getAsJsonObject(PROJECTION)) else PropertyProjection.ALL
     }
 
     companion object {
         private val VERSION = "version"
         private val TITLE = "title"
+        private val PROJECTION = "projection"
     }
 }
@@ -15,9 +15,16 @@
  */
 package com.android.layoutinspectorv2
 
+import com.android.layoutinspectorv2.model.LayoutFileData
+
 /**
  * Represents result of a capture
- * Success: data is not null, and error is the empty string
+ * Success: data is not null, and error is the empty string. snapshot is the hierarchy and the
+ * preview parsed from data while capturing, so that data need not be parsed again
  * Error: data is null, and error a non empty error message
  */
-class LayoutInspectorResult(val data: ByteArray?, val error: String)
+class LayoutInspectorResult @JvmOverloads constructor(
+    val data: ByteArray?,
+    val error: String,
+    val snapshot: LayoutFileData? = null
+)
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2
+
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+
+/**
+ * Selects which view properties are materialized when a dump is parsed.
+ *
+ * Names are matched against both the full name ("layout:mLeft") and the name without its
+ * category ("mLeft"). An explicit name rule wins over a category rule. When any allowlist is
+ * set, only the properties it matches are kept. The parsers always keep the properties they
+ * need to build the tree and its display boxes, whatever the projection says.
+ */
+class PropertyProjection(
+    val categories: Set<String> = emptySet(),
+    val excludedCategories: Set<String> = emptySet(),
+    val names: Set<String> = emptySet(),
+    val excludedNames: Set<String> = emptySet()
+) {
+    val isIdentity: Boolean
+        get() = categories.isEmpty() && excludedCategories.isEmpty() && names.isEmpty() && excludedNames.isEmpty()
+
+    fun accepts(fullName: String): Boolean {
+        if (isIdentity) {
+            return true
+        }
+        val colonIndex = fullName.indexOf(':')
+        val category = if (colonIndex != -1) fullName.substring(0, colonIndex) else null
+        val name = if (colonIndex != -1) fullName.substring(colonIndex + 1) else fullName
+        return accepts(category, name, fullName)
+    }
+
+    fun accepts(category: String?, name: String, fullName: String): Boolean {
+        if (fullName in excludedNames || name in excludedNames) {
+            return false
+        }
+        if (fullName in names || name in names) {
+            return true
+        }
+        if (category != null && category in excludedCategories) {
+            return false
+        }
+        if (categories.isNotEmpty()) {
+            return category != null && category in categories
+        }
+        return names.isEmpty()
+    }
+
+    fun toJson(): JsonObject {
+        val obj = JsonObject()
+        obj.add(CATEGORIES, toJsonArray(categories))
+        obj.add(EXCLUDED_CATEGORIES, toJsonArray(excludedCategories))
+        obj.add(NAMES, toJsonArray(names))
+        obj.add(EXCLUDED_NAMES, toJsonArray(excludedNames))
+        return obj
+    }
+
+    override fun toString(): String {
+        return toJson().toString()
+    }
+
+    companion object {
+        private val CATEGORIES = "categories"
+        private val EXCLUDED_CATEGORIES = "excludedCategories"
+        private val NAMES = "names"
+        private val EXCLUDED_NAMES = "excludedNames"
+
+        @JvmField
+        val ALL = PropertyProjection()
+
+        @JvmStatic
+        fun fromJson(obj: JsonObject): PropertyProjection {
+            return PropertyProjection(
+                fromJsonArray(obj, CATEGORIES),
+                fromJsonArray(obj, EXCLUDED_CATEGORIES),
+                fromJsonArray(obj, NAMES),
+                fromJsonArray(obj, EXCLUDED_NAMES)
+            )
+        }
+
+        private fun toJsonArray(values: Set<String>): JsonArray {
+            val array = JsonArray()
+            values.sorted().forEach { array.add(it) }
+            return array
+        }
+
+        private fun fromJsonArray(obj: JsonObject, key: String): Set<String> {
+            val array = obj.getAsJsonArray(key) ?: return emptySet()
+            return array.map { it.asString }.toSet()
+        }
+    }
+}
@@ -66,6 +66,14 @@ class ClientWindow(val title: String, private val client: Client, val clientView
     fun loadViewImage(node: ViewNode, timeout: Long, unit: TimeUnit): ByteArray? =
       clientViewInspector.captureView(client, title, node, timeout, unit)
 
+    /**
+     * Byte array representing image preview of the view with the `name@hash` [viewId], e.g. as
+     * returned by [com.android.layoutinspectorv2.parser.ViewNodeParser.peekRoot] before the
+     * hierarchy is parsed.
+     */
+    fun loadViewImage(viewId: String, timeout: Long, unit: TimeUnit): ByteArray? =
+      clientViewInspector.captureView(client, title, viewId, timeout, unit)
+
     private class ListViewRootsHandler :
       DebugViewDumpHandler(
         DebugViewDumpHandler.CHUNK_VULW) {
@@ -150,10 +158,17 @@ class ClientWindow(val title: String, private val client: Client, val clientView
             title: String,
             node: ViewNode,
             timeout: Long,
+            timeUnit: TimeUnit): ByteArray? = captureView(client, title, node.toString(), timeout, timeUnit)
+
+        fun captureView(
+            client: Client,
+            title: String,
+            viewId: String,
+            timeout: Long,
             timeUnit: TimeUnit): ByteArray? {
 
             val handler = CaptureByteArrayHandler(DebugViewDumpHandler.CHUNK_VUOP)
-            client.captureView(title, node.toString(), handler)
+            client.captureView(title, viewId, handler)
             return try {
                 handler.getData(timeout, timeUnit)
             } catch(e: IOException) {
@@ -20,9 +20,13 @@ import java.awt.image.BufferedImage
 
 /**
  * Data model for a parsed .li file. Create using methods in [com.android.layoutinspector.parser.LayoutFileDataParser]
+ *
+ * The data of a capture of several windows shows them composed, see [MultiWindowSnapshot], and
+ * holds the data of each window in [windows], bottom first. It is empty for a single window.
  */
-data class LayoutFileData(
+data class LayoutFileData @JvmOverloads constructor(
     val bufferedImage: BufferedImage?,
     val node: ViewNode?,
-    val options: LayoutInspectorCaptureOptions
+    val options: LayoutInspectorCaptureOptions,
+    val windows: List<LayoutFileData> = emptyList()
 )
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.model
+
+import java.awt.image.BufferedImage
+
+/**
+ * Shows the windows of one capture as one: their roots go under a root of their own, one tree
+ * per window, and their previews are drawn over each other, bottom first.
+ *
+ * A dump does not tell where its window is on the screen. The bottom window, usually the
+ * activity, is drawn at the origin. The others are centered, as dialogs are by default.
+ */
+object MultiWindowSnapshot {
+    /** The name of the root the windows are under. */
+    const val ROOT_NAME = "Windows"
+
+    /**
+     * Returns the data of [windows], bottom first, composed in a single tree and a single
+     * preview. The data of a single window is returned as is. The previews are left out if one
+     * of them is missing.
+     */
+    @JvmStatic
+    fun compose(windows: List<LayoutFileData>): LayoutFileData {
+        require(windows.isNotEmpty()) { "No window to compose" }
+        if (windows.size == 1) {
+            return windows[0]
+        }
+        val roots = windows.map { it.node ?: throw IllegalArgumentException("Window without hierarchy") }
+        val root = composeHierarchy(roots, windows.map { it.options.title })
+        val images = windows.map { it.bufferedImage }
+        val image = if (images.all { it != null }) composePreview(root, images) else null
+        return LayoutFileData(image, root, windows[0].options, windows)
+    }
+
+    /**
+     * Makes the window [roots], bottom first, the children of a new root as large as the
+     * largest window. A root without content description is described by the title of its
+     * window in [titles], so the tree tells the windows apart.
+     */
+    @JvmStatic
+    fun composeHierarchy(roots: List<ViewNode>, titles: List<String?>): ViewNode {
+        val width = roots.maxOf { it.displayInfo.width }
+        val height = roots.maxOf { it.displayInfo.height }
+        val root = ViewNode(null, ROOT_NAME, "0")
+        root.displayInfo = DisplayInfo(
+            willNotDraw = true,
+            isVisible = true,
+            left = 0,
+            top = 0,
+            width = width,
+            height = height,
+            scrollX = 0,
+            scrollY = 0,
+            clipChildren = false,
+            translateX = 0f,
+            translateY = 0f,
+            scaleX = 1f,
+            scaleY = 1f,
+            contentDesc = null
+        )
+        for ((i, window) in roots.withIndex()) {
+            val title = titles.getOrNull(i)?.takeIf { it.isNotEmpty() }
+            val info = window.displayInfo.let { it.copy(contentDesc = it.contentDesc ?: title) }
+            // the root of a dump is drawn at the origin whatever its position
+            window.displayInfo = if (i == 0) {
+                info.copy(left = 0, top = 0)
+            } else {
+                info.copy(left = (width - info.width) / 2, top = (height - info.height) / 2)
+            }
+            window.attachTo(root)
+        }
+        root.updateNodeDrawn(true)
+        return root
+    }
+
+    /** Draws the previews [images] of the windows under [root] where [composeHierarchy] put them. */
+    @JvmStatic
+    fun composePreview(root: ViewNode, images: List<BufferedImage?>): BufferedImage {
+        val info = root.displayInfo
+        val composed = BufferedImage(info.width, info.height, BufferedImage.TYPE_INT_ARGB_PRE)
+        val g = composed.createGraphics()
+        try {
+            for ((i, image) in images.withIndex()) {
+                val window = root.children[i].displayInfo
+                if (image != null) {
+                    g.drawImage(image, window.left, window.top, window.width, window.height, null)
+                }
+            }
+        } finally {
+            g.dispose()
+        }
+        return composed
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.model
+
+/**
+ * Describes the name of a [ViewProperty]: its full name split into category and name, the group
+ * it is shown in and its sort order. The parsers intern one per property name and capture in a
+ * [PropertyKeyTable], so the properties of all the nodes share them.
+ */
+class PropertyKey internal constructor(
+    val fullName: String,
+    val name: String,
+    val category: String?,
+    private val table: PropertyKeyTable?
+) : Comparable<PropertyKey> {
+
+    /** Group of the property in the properties table. */
+    val groupKey: String = category ?: if (fullName.endsWith("()")) METHODS_GROUP else PROPERTIES_GROUP
+
+    /** Whether the value was read from a getter rather than a field. */
+    val isMethod: Boolean = fullName.endsWith("()")
+
+    /**
+     * Rank of this key among the keys of its table, in the natural order. Keys that compare
+     * equal share it. -1 until the table has ranked its keys.
+     */
+    var ordinal: Int = -1
+        internal set
+
+    constructor(fullName: String, name: String, category: String?) : this(fullName, name, category, null)
+
+    override fun compareTo(other: PropertyKey): Int {
+        if (this === other) {
+            return 0
+        }
+        if (table != null && table === other.table && ordinal >= 0 && other.ordinal >= 0) {
+            return Integer.compare(ordinal, other.ordinal)
+        }
+        return compareNames(this, other)
+    }
+
+    override fun toString(): String {
+        return fullName
+    }
+
+    companion object {
+        private const val METHODS_GROUP = "methods"
+        private const val PROPERTIES_GROUP = "properties"
+
+        /** Creates a key that is not shared, splitting [fullName] on its first colon. */
+        @JvmStatic
+        fun parse(fullName: String): PropertyKey {
+            return parse(fullName, null)
+        }
+
+        internal fun parse(fullName: String, table: PropertyKeyTable?): PropertyKey {
+            val colonIndex = fullName.indexOf(':')
+            return if (colonIndex != -1) {
+                PropertyKey(fullName, fullName.substring(colonIndex + 1), fullName.substring(0, colonIndex), table)
+            } else {
+                PropertyKey(fullName, fullName, null, table)
+            }
+        }
+
+        /** Orders by category, properties without one first, then by name. */
+        internal fun compareNames(a: PropertyKey, b: PropertyKey): Int {
+            val category = when {
+                a.category === b.category -> 0
+                a.category == null -> -1
+                b.category == null -> 1
+                else -> a.category.compareTo(b.category)
+            }
+            return if (category != 0) category else a.name.compareTo(b.name)
+        }
+    }
+}
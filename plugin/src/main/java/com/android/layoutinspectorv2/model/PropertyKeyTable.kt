@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.model
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The [PropertyKey]s of one capture. Property names are split once here instead of once per
+ * node, and once all the names are known the keys are ranked so that sorting properties only
+ * compares ints.
+ *
+ * [intern] may be called from several threads, [create] and [rankKeys] may not.
+ */
+internal class PropertyKeyTable {
+    private val mKeys = ConcurrentHashMap<String, PropertyKey>()
+    // keys whose category is not derived from their full name
+    private val mOtherKeys = ArrayList<PropertyKey>()
+
+    /** Returns the key of [fullName], splitting it on its first colon the first time. */
+    fun intern(fullName: String): PropertyKey {
+        mKeys[fullName]?.let { return it }
+        return mKeys.computeIfAbsent(fullName) { PropertyKey.parse(it, this) }
+    }
+
+    /** Creates a key with an explicit [name] and [category]. */
+    fun create(fullName: String, name: String, category: String?): PropertyKey {
+        val key = PropertyKey(fullName, name, category, this)
+        mOtherKeys.add(key)
+        return key
+    }
+
+    /** Returns the keys known so far. */
+    fun keys(): MutableList<PropertyKey> {
+        val keys = ArrayList<PropertyKey>(mKeys.size + mOtherKeys.size)
+        keys.addAll(mKeys.values)
+        keys.addAll(mOtherKeys)
+        return keys
+    }
+
+    /** Ranks the keys known so far, keys created afterwards fall back to comparing names. */
+    fun rankKeys() {
+        val keys = keys()
+        keys.sortWith(Comparator { a, b -> PropertyKey.compareNames(a, b) })
+        var ordinal = -1
+        var previous: PropertyKey? = null
+        for (key in keys) {
+            if (previous == null || PropertyKey.compareNames(previous, key) != 0) {
+                ordinal++
+            }
+            key.ordinal = ordinal
+            previous = key
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.model
+
+import java.util.ArrayDeque
+
+/**
+ * The last snapshots of a window, oldest first. Holds at most [maxSnapshots] snapshots and, past
+ * the latest one, at most [maxBytes] of them as estimated by [estimateBytes]: the oldest ones are
+ * dropped first.
+ */
+class SnapshotHistory(
+    private val maxSnapshots: Int = DEFAULT_MAX_SNAPSHOTS,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES
+) {
+    private class Entry(val data: LayoutFileData, val bytes: Long)
+
+    private val entries = ArrayDeque<Entry>()
+
+    /** Estimated size of the snapshots held. */
+    @Volatile
+    var bytes: Long = 0
+        private set
+
+    val size: Int
+        @Synchronized get() = entries.size
+
+    init {
+        require(maxSnapshots > 0) { "maxSnapshots must be positive: $maxSnapshots" }
+    }
+
+    /** Adds [data] as the latest snapshot, always kept whatever its size. */
+    @Synchronized
+    fun add(data: LayoutFileData) {
+        val entry = Entry(data, estimateBytes(data))
+        entries.addLast(entry)
+        bytes += entry.bytes
+        while (entries.size > maxSnapshots || (entries.size > 1 && bytes > maxBytes)) {
+            bytes -= entries.removeFirst().bytes
+        }
+    }
+
+    /** Returns the [index]th snapshot, 0 being the oldest. */
+    @Synchronized
+    operator fun get(index: Int): LayoutFileData {
+        if (index < 0 || index >= entries.size) {
+            throw IndexOutOfBoundsException("Index: $index, size: ${entries.size}")
+        }
+        return entries.elementAt(index).data
+    }
+
+    @Synchronized
+    fun latest(): LayoutFileData? = entries.peekLast()?.data
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        bytes = 0
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SNAPSHOTS = 16
+        const val DEFAULT_MAX_BYTES = 256L * 1024 * 1024
+
+        // a rough allowance for a node, its display info and its properties
+        private const val BYTES_PER_NODE = 2048L
+
+        /** Estimated heap size of [data]: its preview pixels, and its nodes with their properties. */
+        @JvmStatic
+        fun estimateBytes(data: LayoutFileData): Long {
+            val image = data.bufferedImage
+            val imageBytes = if (image == null) 0L else image.width.toLong() * image.height * 4
+            val root = data.node ?: return imageBytes
+            var nodes = 0L
+            val pending = ArrayDeque<ViewNode>()
+            pending.add(root)
+            while (pending.isNotEmpty()) {
+                val node = pending.removeLast()
+                nodes++
+                pending.addAll(node.children)
+            }
+            return imageBytes + nodes * BYTES_PER_NODE
+        }
+    }
+}
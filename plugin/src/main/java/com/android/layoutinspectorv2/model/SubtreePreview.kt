@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.model
+
+import java.awt.AlphaComposite
+import java.awt.RenderingHints
+import java.awt.geom.Rectangle2D
+import java.awt.image.BufferedImage
+import kotlin.math.ceil
+
+/**
+ * Crops the preview of a subtree out of the preview of its root, which needs no device. Views
+ * drawn over the subtree, or the parts of it clipped by its ancestors, show up as on the root
+ * preview, so the image the device renders for the subtree is still worth asking for.
+ */
+object SubtreePreview {
+    /**
+     * Returns the bounds of [node] in the coordinates of [root], with the translations and scales
+     * of its ancestors applied as the preview draws them, or null if [node] is not under [root].
+     */
+    @JvmStatic
+    fun getBoundsInRoot(root: ViewNode, node: ViewNode): Rectangle2D? {
+        val path = ViewNode.getPathFromParent(node, root)
+        if (path.getPathComponent(0) !== root) {
+            return null
+        }
+        var left = 0f
+        var top = 0f
+        var scaleX = 1f
+        var scaleY = 1f
+        var info = root.displayInfo.getCopyAtOrigin()
+        for (i in 0 until path.pathCount) {
+            info = if (i == 0) info else (path.getPathComponent(i) as ViewNode).displayInfo
+            val newScaleX = scaleX * info.scaleX
+            val newScaleY = scaleY * info.scaleY
+            left += (info.left + info.translateX) * scaleX + info.width * (scaleX - newScaleX) / 2
+            top += (info.top + info.translateY) * scaleY + info.height * (scaleY - newScaleY) / 2
+            scaleX = newScaleX
+            scaleY = newScaleY
+        }
+        return Rectangle2D.Float(left, top, info.width * scaleX, info.height * scaleY)
+    }
+
+    /** An image cropped out of the preview of a root, which shows [region] of its view, in the coordinates of the view. */
+    class Crop(val image: BufferedImage, val region: Rectangle2D)
+
+    /**
+     * Returns the part of [rootImage], the preview of [root], covered by [node], at the
+     * resolution of [rootImage]. Only the part of [node] inside of the preview is cropped, a long
+     * list may be many times as large. Returns null if [node] is not under [root] or is not in
+     * the preview.
+     */
+    @JvmStatic
+    fun crop(rootImage: BufferedImage, root: ViewNode, node: ViewNode): Crop? {
+        val rootInfo = root.displayInfo
+        if (rootInfo.width <= 0 || rootInfo.height <= 0) {
+            return null
+        }
+        val bounds = getBoundsInRoot(root, node) ?: return null
+        val visible = bounds.createIntersection(
+            Rectangle2D.Double(0.0, 0.0, rootInfo.width.toDouble(), rootInfo.height.toDouble()))
+        if (visible.isEmpty) {
+            return null
+        }
+        // the preview may not have the size of the root, e.g. while it is subsampled
+        val pixelsX = rootImage.width.toDouble() / rootInfo.width
+        val pixelsY = rootImage.height.toDouble() / rootInfo.height
+        val width = ceil(visible.width * pixelsX).toInt()
+        val height = ceil(visible.height * pixelsY).toInt()
+        if (width <= 0 || height <= 0) {
+            return null
+        }
+
+        val image = BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE)
+        val g = image.createGraphics()
+        try {
+            g.composite = AlphaComposite.Src
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+            g.scale(width / (visible.width * pixelsX), height / (visible.height * pixelsY))
+            g.translate(-visible.x * pixelsX, -visible.y * pixelsY)
+            g.drawImage(rootImage, 0, 0, null)
+        } finally {
+            g.dispose()
+        }
+
+        // from the coordinates of the root to those of the view, which its ancestors may scale
+        val scaleX = node.displayInfo.width / bounds.width
+        val scaleY = node.displayInfo.height / bounds.height
+        val region = Rectangle2D.Double(
+            (visible.x - bounds.x) * scaleX,
+            (visible.y - bounds.y) * scaleY,
+            visible.width * scaleX,
+            visible.height * scaleY
+        )
+        return Crop(image, region)
+    }
+}
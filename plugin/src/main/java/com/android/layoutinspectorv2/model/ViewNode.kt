@@ -30,7 +30,7 @@ import javax.swing.tree.TreePath
  * Created by parsing view dumps using [com.android.layoutinspector.parser.ViewNodeParser].
  */
 // make parent private because it's the same as the getParent method from TreeNode
-data class ViewNode internal constructor(private val parent: ViewNode?, val name: String, val hash: String) :
+data class ViewNode internal constructor(private var parent: ViewNode?, val name: String, val hash: String) :
     TreeNode {
     // If the force state is set, the preview tries to render/hide the view
     // (depending on the parent's state)
@@ -40,9 +40,38 @@ data class ViewNode internal constructor(private val parent: ViewNode?, val name
         INVISIBLE
     }
 
-    val groupedProperties: MutableMap<String, MutableList<ViewProperty>> = Maps.newHashMap()
-    val namedProperties: MutableMap<String, ViewProperty> = Maps.newHashMap()
-    val properties: MutableList<ViewProperty> = Lists.newArrayList()
+    /**
+     * Decodes the full property set of a node the first time it is queried. Parsers that only
+     * materialize what the tree and the preview need up front install one on each node.
+     */
+    internal fun interface PropertyLoader {
+        fun load(node: ViewNode)
+    }
+
+    private val mGroupedProperties: MutableMap<String, MutableList<ViewProperty>> = Maps.newHashMap()
+    private val mNamedProperties: MutableMap<String, ViewProperty> = Maps.newHashMap()
+    private val mProperties: MutableList<ViewProperty> = Lists.newArrayList()
+
+    @Volatile
+    private var mPropertyLoader: PropertyLoader? = null
+    // set while the loader runs so it can fill the node through the regular accessors
+    private var mLoadingProperties = false
+
+    val groupedProperties: MutableMap<String, MutableList<ViewProperty>>
+        get() {
+            ensurePropertiesLoaded()
+            return mGroupedProperties
+        }
+    val namedProperties: MutableMap<String, ViewProperty>
+        get() {
+            ensurePropertiesLoaded()
+            return mNamedProperties
+        }
+    val properties: MutableList<ViewProperty>
+        get() {
+            ensurePropertiesLoaded()
+            return mProperties
+        }
     val children: MutableList<ViewNode> = Lists.newArrayList()
     val previewBox: Rectangle = Rectangle()
 
@@ -58,8 +87,47 @@ data class ViewNode internal constructor(private val parent: ViewNode?, val name
         private set
     var forcedState: ForcedState = ForcedState.NONE
 
+    /** Whether all the properties of this node have been decoded. */
+    val isPropertiesLoaded: Boolean
+        get() = mPropertyLoader == null
+
+    internal fun setPropertyLoader(loader: PropertyLoader?) {
+        mPropertyLoader = loader
+    }
+
+    /**
+     * Returns this node if its properties are decoded, otherwise a detached copy that holds all
+     * of them. The properties of this node stay undecoded, so a reader of every node does not
+     * keep them all in memory.
+     */
+    internal fun withAllProperties(): ViewNode {
+        val loader = mPropertyLoader ?: return this
+        val copy = ViewNode(null, name, hash)
+        loader.load(copy)
+        return copy
+    }
+
+    private fun ensurePropertiesLoaded() {
+        if (mPropertyLoader == null) {
+            return
+        }
+        synchronized(this) {
+            val loader = mPropertyLoader
+            if (loader == null || mLoadingProperties) {
+                return
+            }
+            mLoadingProperties = true
+            try {
+                loader.load(this)
+            } finally {
+                mLoadingProperties = false
+                mPropertyLoader = null
+            }
+        }
+    }
+
     fun addPropertyToGroup(property: ViewProperty) {
-        val key = getKey(property)
+        val key = property.key.groupKey
         val propertiesList = groupedProperties.getOrDefault(
             key,
             LinkedList()
@@ -68,14 +136,6 @@ data class ViewNode internal constructor(private val parent: ViewNode?, val name
         groupedProperties[key] = propertiesList
     }
 
-    private fun getKey(property: ViewProperty): String {
-        return property.category ?: if (property.fullName.endsWith("()")) {
-            "methods"
-        } else {
-            "properties"
-        }
-    }
-
     fun getProperty(name: String, vararg altNames: String): ViewProperty? {
         var property: ViewProperty? = namedProperties[name]
         var i = 0
@@ -86,6 +146,17 @@ data class ViewNode internal constructor(private val parent: ViewNode?, val name
         return property
     }
 
+    /**
+     * Makes this root the last child of [newParent], e.g. to show the windows of a capture under
+     * one root. The nodes of this tree then hash differently, so they must not be in a hashed
+     * collection yet.
+     */
+    internal fun attachTo(newParent: ViewNode) {
+        check(parent == null) { "$this already has a parent" }
+        parent = newParent
+        newParent.children.add(this)
+    }
+
     /** Recursively updates all the visibility parameter of the nodes.  */
     fun updateNodeDrawn() {
         updateNodeDrawn(isParentVisible)
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.model
+
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * Matches the nodes of a new capture of a window to those of an older capture, so that what the
+ * user did with the old nodes, such as selecting, expanding or hiding them, carries over.
+ *
+ * A node is matched by its hash first, which identifies the view object on the device. A view
+ * recreated since then is matched by its id path, the ids of the view and of its ancestors that
+ * have one, when no other old view has the same path. What is left is matched by its position
+ * among the children of its matched parent. Nodes are only matched with nodes of the same class,
+ * and each old node with at most one new node.
+ */
+object ViewNodeMatcher {
+    private const val NO_ID = "NO_ID"
+
+    /** Returns the old node matched to each node of [newRoot] that has one, by identity. */
+    @JvmStatic
+    fun match(oldRoot: ViewNode, newRoot: ViewNode): Map<ViewNode, ViewNode> {
+        val oldNodes = flatten(oldRoot)
+        val newNodes = flatten(newRoot)
+        val matches = IdentityHashMap<ViewNode, ViewNode>(newNodes.size)
+        val used = Collections.newSetFromMap(IdentityHashMap<ViewNode, Boolean>(oldNodes.size))
+
+        val oldByHash = HashMap<String, ViewNode>(oldNodes.size * 2)
+        for (node in oldNodes) {
+            oldByHash.putIfAbsent(node.hash, node)
+        }
+        for (node in newNodes) {
+            val old = oldByHash[node.hash]
+            if (old != null && old.name == node.name && used.add(old)) {
+                matches[node] = old
+            }
+        }
+        if (matches.size == newNodes.size) {
+            return matches
+        }
+
+        val oldByIdPath = HashMap<String, ViewNode?>()
+        forEachIdPath(oldRoot) { node, path ->
+            if (node !in used) {
+                // ambiguous paths, e.g. the items of a list, match nothing
+                oldByIdPath[path] = if (oldByIdPath.containsKey(path)) null else node
+            }
+        }
+        forEachIdPath(newRoot) { node, path ->
+            if (!matches.containsKey(node)) {
+                val old = oldByIdPath[path]
+                if (old != null && old.name == node.name && used.add(old)) {
+                    matches[node] = old
+                }
+            }
+        }
+
+        if (!matches.containsKey(newRoot) && newRoot.name == oldRoot.name && used.add(oldRoot)) {
+            matches[newRoot] = oldRoot
+        }
+        // parents come before their children
+        for (node in newNodes) {
+            val old = matches[node] ?: continue
+            val count = minOf(node.children.size, old.children.size)
+            for (i in 0 until count) {
+                val child = node.children[i]
+                val oldChild = old.children[i]
+                if (!matches.containsKey(child) && child.name == oldChild.name && used.add(oldChild)) {
+                    matches[child] = oldChild
+                }
+            }
+        }
+        return matches
+    }
+
+    /** Returns the nodes of the tree of [root], breadth first. */
+    private fun flatten(root: ViewNode): List<ViewNode> {
+        val nodes = ArrayList<ViewNode>()
+        nodes.add(root)
+        var i = 0
+        while (i < nodes.size) {
+            nodes.addAll(nodes[i].children)
+            i++
+        }
+        return nodes
+    }
+
+    /** Calls [action] with each node of the tree of [root] that has an id, and its id path. */
+    private inline fun forEachIdPath(root: ViewNode, action: (ViewNode, String) -> Unit) {
+        val nodes = ArrayList<ViewNode>()
+        val paths = ArrayList<String>()
+        nodes.add(root)
+        paths.add("")
+        while (nodes.isNotEmpty()) {
+            val node = nodes.removeAt(nodes.size - 1)
+            var path = paths.removeAt(paths.size - 1)
+            val id = node.id
+            if (id != null && id != NO_ID) {
+                path = "$path/$id"
+                action(node, path)
+            }
+            for (child in node.children) {
+                nodes.add(child)
+                paths.add(path)
+            }
+        }
+    }
+}
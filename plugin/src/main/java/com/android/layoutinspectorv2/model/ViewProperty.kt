@@ -15,23 +15,103 @@
  */
 package com.android.layoutinspectorv2.model
 
-import com.google.common.collect.ComparisonChain
-import com.google.common.collect.Ordering
-
 /**
  * Represents a property of a [com.android.layoutinspector.model.ViewNode].
+ *
+ * Values decoded from a typed dump keep their primitive form, and [value] formats them only when
+ * it is read. Text values are kept as they are.
  */
-data class ViewProperty(val fullName: String, val name: String, val category: String?, val value: String) :
-    Comparable<ViewProperty> {
+class ViewProperty private constructor(
+    val key: PropertyKey,
+    val type: Type,
+    // raw bits of primitive values: 0 or 1 for booleans, the value for ints and longs, the IEEE
+    // bits for floats and doubles
+    private val mBits: Long,
+    private val mText: String?
+) : Comparable<ViewProperty> {
+
+    enum class Type {
+        STRING,
+        BOOLEAN,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE
+    }
+
+    constructor(key: PropertyKey, value: String) : this(key, Type.STRING, 0, value)
+
+    constructor(fullName: String, name: String, category: String?, value: String) :
+            this(PropertyKey(fullName, name, category), value)
+
+    val fullName: String
+        get() = key.fullName
+    val name: String
+        get() = key.name
+    val category: String?
+        get() = key.category
+
+    /** The value as it reads in a text dump. Primitive values are formatted on every call. */
+    val value: String
+        get() = when (type) {
+            Type.STRING -> mText!!
+            Type.BOOLEAN -> (mBits != 0L).toString()
+            Type.INT, Type.LONG -> mBits.toString()
+            Type.FLOAT -> java.lang.Float.intBitsToFloat(mBits.toInt()).toString()
+            Type.DOUBLE -> java.lang.Double.longBitsToDouble(mBits).toString()
+        }
+
+    /** Reads the value like [java.lang.Boolean.parseBoolean] reads [value]. */
+    fun getBoolean(): Boolean {
+        return when (type) {
+            Type.BOOLEAN -> mBits != 0L
+            Type.STRING -> java.lang.Boolean.parseBoolean(mText)
+            else -> false
+        }
+    }
+
+    /** Reads the value like [Integer.parseInt] reads [value], or returns [defaultValue] if it fails. */
+    fun getInt(defaultValue: Int): Int {
+        return when (type) {
+            Type.INT -> mBits.toInt()
+            Type.LONG -> if (mBits >= Int.MIN_VALUE && mBits <= Int.MAX_VALUE) mBits.toInt() else defaultValue
+            Type.STRING -> try {
+                Integer.parseInt(mText)
+            } catch (e: NumberFormatException) {
+                defaultValue
+            }
+            else -> defaultValue
+        }
+    }
+
+    /** Reads the value like [java.lang.Float.parseFloat] reads [value], or returns [defaultValue] if it fails. */
+    fun getFloat(defaultValue: Float): Float {
+        return when (type) {
+            Type.FLOAT -> java.lang.Float.intBitsToFloat(mBits.toInt())
+            Type.INT, Type.LONG -> mBits.toFloat()
+            Type.BOOLEAN -> defaultValue
+            Type.STRING, Type.DOUBLE -> try {
+                java.lang.Float.parseFloat(value)
+            } catch (e: NumberFormatException) {
+                defaultValue
+            }
+        }
+    }
+
+    /** Raw bits of a primitive value, for serializing the property as it is stored. */
+    internal val bits: Long
+        get() = mBits
+
+    /** The text of a [Type.STRING] value, null for primitive values. */
+    internal val text: String?
+        get() = mText
+
     override fun toString(): String {
         return fullName + '=' + value
     }
 
     override fun compareTo(other: ViewProperty): Int {
-        return ComparisonChain.start()
-            .compare(category, other.category, CATEGORY_COMPARATOR)
-            .compare(name, other.name)
-            .result()
+        return key.compareTo(other.key)
     }
 
     override fun equals(other: Any?): Boolean {
@@ -47,12 +127,39 @@ data class ViewProperty(val fullName: String, val name: String, val category: St
         var result = fullName.hashCode()
         result = 31 * result + name.hashCode()
         result = 31 * result + (category?.hashCode() ?: 0)
-        result = 31 * result + (value?.hashCode() ?: 0)
+        result = 31 * result + value.hashCode()
         return result
     }
 
     companion object {
-        private val CATEGORY_COMPARATOR =
-            Ordering.natural<Comparable<in String>>().nullsFirst<String>()
+        /** Restores a property from its [type], raw [bits] and [text]. */
+        internal fun of(key: PropertyKey, type: Type, bits: Long, text: String?): ViewProperty {
+            return ViewProperty(key, type, bits, if (type == Type.STRING) text ?: "" else null)
+        }
+
+        @JvmStatic
+        fun ofBoolean(key: PropertyKey, value: Boolean): ViewProperty {
+            return ViewProperty(key, Type.BOOLEAN, if (value) 1 else 0, null)
+        }
+
+        @JvmStatic
+        fun ofInt(key: PropertyKey, value: Int): ViewProperty {
+            return ViewProperty(key, Type.INT, value.toLong(), null)
+        }
+
+        @JvmStatic
+        fun ofLong(key: PropertyKey, value: Long): ViewProperty {
+            return ViewProperty(key, Type.LONG, value, null)
+        }
+
+        @JvmStatic
+        fun ofFloat(key: PropertyKey, value: Float): ViewProperty {
+            return ViewProperty(key, Type.FLOAT, java.lang.Float.floatToRawIntBits(value).toLong(), null)
+        }
+
+        @JvmStatic
+        fun ofDouble(key: PropertyKey, value: Double): ViewProperty {
+            return ViewProperty(key, Type.DOUBLE, java.lang.Double.doubleToRawLongBits(value), null)
+        }
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import java.io.InputStream
+import java.nio.ByteBuffer
+
+/**
+ * Reads the remaining bytes of a [ByteBuffer], e.g. a section of a mapped file, without copying
+ * them first.
+ */
+internal class ByteBufferInputStream(buffer: ByteBuffer) : InputStream() {
+    private val mBuffer = buffer.duplicate()
+    private var mMark = -1
+
+    override fun read(): Int {
+        return if (mBuffer.hasRemaining()) mBuffer.get().toInt() and 0xFF else -1
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (len == 0) {
+            return 0
+        }
+        if (!mBuffer.hasRemaining()) {
+            return -1
+        }
+        val count = minOf(len, mBuffer.remaining())
+        mBuffer.get(b, off, count)
+        return count
+    }
+
+    override fun skip(n: Long): Long {
+        val count = minOf(n, mBuffer.remaining().toLong()).coerceAtLeast(0).toInt()
+        mBuffer.position(mBuffer.position() + count)
+        return count.toLong()
+    }
+
+    override fun available(): Int {
+        return mBuffer.remaining()
+    }
+
+    override fun markSupported(): Boolean {
+        return true
+    }
+
+    override fun mark(readlimit: Int) {
+        mMark = mBuffer.position()
+    }
+
+    override fun reset() {
+        if (mMark < 0) {
+            throw java.io.IOException("Mark not set")
+        }
+        mBuffer.position(mMark)
+    }
+}
@@ -17,99 +17,17 @@ package com.android.layoutinspectorv2.parser
 
 import com.android.layoutinspectorv2.model.DisplayInfo
 import com.android.layoutinspectorv2.model.ViewNode
-import com.android.layoutinspectorv2.model.ViewProperty
 
 object DisplayInfoFactory {
+    /** Names of every property [createDisplayInfoFromNode] may read, in all the dump flavors. */
+    @JvmStatic
+    val PROPERTY_NAMES = DisplayInfoResolver.PROPERTY_NAMES
+
+    /**
+     * Probes every alias of every field. The parsers use a [DisplayInfoResolver] built for their
+     * capture instead.
+     */
     fun createDisplayInfoFromNode(node: ViewNode): DisplayInfo {
-        val left = getInt(node.getProperty("mLeft", "layout:mLeft", "left"), 0)
-        val top = getInt(node.getProperty("mTop", "layout:mTop", "top"), 0)
-        val width = getInt(node.getProperty("getWidth()", "layout:getWidth()", "width"), 10)
-        val height = getInt(node.getProperty("getHeight()", "layout:getHeight()", "height"), 10)
-        val scrollX = getInt(node.getProperty("mScrollX", "scrolling:mScrollX", "scrollX"), 0)
-        val scrollY = getInt(node.getProperty("mScrollY", "scrolling:mScrollY", "scrollY"), 0)
-
-        val willNotDraw =
-            getBoolean(node.getProperty("willNotDraw()", "drawing:willNotDraw()", "willNotDraw"), false)
-        val clipChildren = getBoolean(
-            node.getProperty("getClipChildren()", "drawing:getClipChildren()", "clipChildren"), true
-        )
-
-        val translateX =
-            getFloat(node.getProperty("getTranslationX", "drawing:getTranslationX()", "translationX"), 0f)
-        val translateY =
-            getFloat(node.getProperty("getTranslationY", "drawing:getTranslationY()", "translationY"), 0f)
-        val scaleX = getFloat(node.getProperty("getScaleX()", "drawing:getScaleX()", "scaleX"), 1f)
-        val scaleY = getFloat(node.getProperty("getScaleY()", "drawing:getScaleY()", "scaleY"), 1f)
-
-        var descProp = node.getProperty("accessibility:getContentDescription()", "contentDescription")
-        var contentDescription: String? = if (descProp != null && descProp.value != "null")
-            descProp.value
-        else
-            null
-
-        if (contentDescription == null) {
-            descProp = node.getProperty("text:mText")
-            contentDescription = if (descProp != null && descProp.value != "null")
-                descProp.value
-            else
-                null
-        }
-
-        val visibility = node.getProperty("getVisibility()", "misc:getVisibility()", "visibility")
-        val isVisible = (visibility == null
-                || "0" == visibility.value
-                || "VISIBLE" == visibility.value)
-        return DisplayInfo(
-            willNotDraw,
-            isVisible,
-            left,
-            top,
-            width,
-            height,
-            scrollX,
-            scrollY,
-            clipChildren,
-            translateX,
-            translateY,
-            scaleX,
-            scaleY,
-            contentDescription
-        )
-    }
-
-    private fun getBoolean(p: ViewProperty?, defaultValue: Boolean): Boolean {
-        if (p != null) {
-            return try {
-                java.lang.Boolean.parseBoolean(p.value)
-            } catch (e: NumberFormatException) {
-                defaultValue
-            }
-
-        }
-        return defaultValue
-    }
-
-    private fun getInt(p: ViewProperty?, defaultValue: Int): Int {
-        if (p != null) {
-            return try {
-                Integer.parseInt(p.value)
-            } catch (e: NumberFormatException) {
-                defaultValue
-            }
-
-        }
-        return defaultValue
-    }
-
-    private fun getFloat(p: ViewProperty?, defaultValue: Float): Float {
-        if (p != null) {
-            return try {
-                java.lang.Float.parseFloat(p.value)
-            } catch (e: NumberFormatException) {
-                defaultValue
-            }
-
-        }
-        return defaultValue
+        return DisplayInfoResolver.ALL_ALIASES.createDisplayInfo(node)
     }
 }
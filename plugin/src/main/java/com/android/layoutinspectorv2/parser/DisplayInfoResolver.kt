@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.model.DisplayInfo
+import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.model.ViewProperty
+
+private const val LEFT = 0
+private const val TOP = 1
+private const val WIDTH = 2
+private const val HEIGHT = 3
+private const val SCROLL_X = 4
+private const val SCROLL_Y = 5
+private const val WILL_NOT_DRAW = 6
+private const val CLIP_CHILDREN = 7
+private const val TRANSLATION_X = 8
+private const val TRANSLATION_Y = 9
+private const val SCALE_X = 10
+private const val SCALE_Y = 11
+private const val CONTENT_DESCRIPTION = 12
+private const val TEXT = 13
+private const val VISIBILITY = 14
+
+/**
+ * Builds the [DisplayInfo] of the nodes of one capture.
+ *
+ * Each field of a [DisplayInfo] is read from one of several property names depending on the
+ * dump flavor, e.g. "mLeft", "layout:mLeft" or "left". [forNames] keeps only the names the
+ * capture uses, so a node costs one lookup per field instead of probing every alias.
+ */
+class DisplayInfoResolver private constructor(private val mAliases: Array<Array<String>>) {
+
+    fun createDisplayInfo(node: ViewNode): DisplayInfo {
+        val properties = node.namedProperties
+        val left = getInt(find(properties, LEFT), 0)
+        val top = getInt(find(properties, TOP), 0)
+        val width = getInt(find(properties, WIDTH), 10)
+        val height = getInt(find(properties, HEIGHT), 10)
+        val scrollX = getInt(find(properties, SCROLL_X), 0)
+        val scrollY = getInt(find(properties, SCROLL_Y), 0)
+
+        val willNotDraw = getBoolean(find(properties, WILL_NOT_DRAW), false)
+        val clipChildren = getBoolean(find(properties, CLIP_CHILDREN), true)
+
+        val translateX = getFloat(find(properties, TRANSLATION_X), 0f)
+        val translateY = getFloat(find(properties, TRANSLATION_Y), 0f)
+        val scaleX = getFloat(find(properties, SCALE_X), 1f)
+        val scaleY = getFloat(find(properties, SCALE_Y), 1f)
+
+        var descProp = find(properties, CONTENT_DESCRIPTION)
+        var contentDescription: String? = if (descProp != null && descProp.value != "null")
+            descProp.value
+        else
+            null
+
+        if (contentDescription == null) {
+            descProp = find(properties, TEXT)
+            contentDescription = if (descProp != null && descProp.value != "null")
+                descProp.value
+            else
+                null
+        }
+
+        val visibility = find(properties, VISIBILITY)
+        val isVisible = (visibility == null
+                || if (visibility.type == ViewProperty.Type.INT) {
+                    visibility.getInt(-1) == 0
+                } else {
+                    "0" == visibility.value || "VISIBLE" == visibility.value
+                })
+        return DisplayInfo(
+            willNotDraw,
+            isVisible,
+            left,
+            top,
+            width,
+            height,
+            scrollX,
+            scrollY,
+            clipChildren,
+            translateX,
+            translateY,
+            scaleX,
+            scaleY,
+            contentDescription
+        )
+    }
+
+    private fun find(properties: Map<String, ViewProperty>, field: Int): ViewProperty? {
+        for (alias in mAliases[field]) {
+            val property = properties[alias]
+            if (property != null) {
+                return property
+            }
+        }
+        return null
+    }
+
+    private fun getBoolean(p: ViewProperty?, defaultValue: Boolean): Boolean {
+        return p?.getBoolean() ?: defaultValue
+    }
+
+    private fun getInt(p: ViewProperty?, defaultValue: Int): Int {
+        return p?.getInt(defaultValue) ?: defaultValue
+    }
+
+    private fun getFloat(p: ViewProperty?, defaultValue: Float): Float {
+        return p?.getFloat(defaultValue) ?: defaultValue
+    }
+
+    companion object {
+        // names of each field in the order they are probed, indexed by the constants above
+        private val FIELD_ALIASES = arrayOf(
+            arrayOf("mLeft", "layout:mLeft", "left"),
+            arrayOf("mTop", "layout:mTop", "top"),
+            arrayOf("getWidth()", "layout:getWidth()", "width"),
+            arrayOf("getHeight()", "layout:getHeight()", "height"),
+            arrayOf("mScrollX", "scrolling:mScrollX", "scrollX"),
+            arrayOf("mScrollY", "scrolling:mScrollY", "scrollY"),
+            arrayOf("willNotDraw()", "drawing:willNotDraw()", "willNotDraw"),
+            arrayOf("getClipChildren()", "drawing:getClipChildren()", "clipChildren"),
+            arrayOf("getTranslationX", "drawing:getTranslationX()", "translationX"),
+            arrayOf("getTranslationY", "drawing:getTranslationY()", "translationY"),
+            arrayOf("getScaleX()", "drawing:getScaleX()", "scaleX"),
+            arrayOf("getScaleY()", "drawing:getScaleY()", "scaleY"),
+            arrayOf("accessibility:getContentDescription()", "contentDescription"),
+            arrayOf("text:mText"),
+            arrayOf("getVisibility()", "misc:getVisibility()", "visibility")
+        )
+
+        /** Names of every property a resolver may read, in all the dump flavors. */
+        @JvmField
+        val PROPERTY_NAMES: Set<String> = FIELD_ALIASES.flatten().toSet()
+
+        /** Probes every alias, for nodes whose capture is not known. */
+        @JvmField
+        val ALL_ALIASES = DisplayInfoResolver(FIELD_ALIASES)
+
+        /**
+         * Returns a resolver that only looks up the [names] a capture uses, i.e. the keys of the
+         * named properties of its nodes. When a capture uses several aliases of a field, they
+         * are still probed in order.
+         */
+        @JvmStatic
+        fun forNames(names: Set<String>): DisplayInfoResolver {
+            return DisplayInfoResolver(Array(FIELD_ALIASES.size) { field ->
+                FIELD_ALIASES[field].filter { it in names }.toTypedArray()
+            })
+        }
+    }
+}
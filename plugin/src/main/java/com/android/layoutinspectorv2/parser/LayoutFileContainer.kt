@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+
+/**
+ * The sectioned layout of .liv2 files, from format version 3.
+ *
+ * ```
+ * magic        4 bytes  "LIV2"
+ * version      u16      3
+ * count        u16      number of sections
+ * table        count x (type u32, flags u32, offset u64, length u64)
+ * sections     the section bytes, at the offsets of the table
+ * ```
+ *
+ * The only flag is [FLAG_DEFLATE], the other bits are reserved and 0. A deflated section is the
+ * u64 length of its inflated bytes followed by a zlib stream.
+ *
+ * All numbers are big endian and offsets are from the start of the file. Readers skip the
+ * section types they do not know, so sections can be added without a new version. Files written
+ * before version 3 are a Java object stream and start with its magic instead, see
+ * [LayoutFileDataParser].
+ *
+ * A capture of several windows stores the bottom window in the options, hierarchy and preview
+ * sections, so readers that do not know [SECTION_WINDOWS] open it as a capture of that window.
+ * [SECTION_WINDOWS] holds the other windows, bottom first, each in a container of its own:
+ *
+ * ```
+ * count        u16      number of windows
+ * windows      count x (length u64, container)
+ * ```
+ *
+ * A container read from a file [map]ped in memory hands out its sections as slices of the
+ * mapping, nothing is copied. The mapping lives as long as a slice is referenced.
+ */
+class LayoutFileContainer private constructor(
+    private val mSections: Map<Int, ByteBuffer>,
+    private val mFlags: Map<Int, Int>
+) {
+
+    /**
+     * Returns the bytes of the section of [type], or null if the file has none. A deflated
+     * section is inflated straight into a buffer of its exact size.
+     */
+    @Throws(IOException::class)
+    fun section(type: Int): ByteBuffer? {
+        val section = mSections[type] ?: return null
+        if (!isDeflated(type)) {
+            return section.duplicate()
+        }
+        val bytes = ByteArray(inflatedLength(section, type))
+        inflate(section).use { input ->
+            try {
+                input.readFully(bytes)
+            } catch (e: EOFException) {
+                throw IOException("Section $type is shorter than its inflated length", e)
+            }
+            if (input.read() != -1) {
+                throw IOException("Section $type is longer than its inflated length")
+            }
+        }
+        return ByteBuffer.wrap(bytes)
+    }
+
+    /**
+     * Returns a stream over the bytes of the section of [type], or null if the file has none.
+     * Deflated sections are inflated while they are read.
+     */
+    @Throws(IOException::class)
+    fun sectionStream(type: Int): InputStream? {
+        val section = mSections[type] ?: return null
+        if (!isDeflated(type)) {
+            return ByteBufferInputStream(section)
+        }
+        inflatedLength(section, type)
+        return inflate(section)
+    }
+
+    /**
+     * Returns the section of [type] as it is stored, deflated or not, or null if the file has
+     * none. E.g. to hash a section without inflating it.
+     */
+    fun storedSection(type: Int): ByteBuffer? {
+        return mSections[type]?.duplicate()
+    }
+
+    fun hasSection(type: Int): Boolean {
+        return mSections.containsKey(type)
+    }
+
+    /** Whether the section of [type] is stored deflated. */
+    fun isDeflated(type: Int): Boolean {
+        return (mFlags[type] ?: 0) and FLAG_DEFLATE != 0
+    }
+
+    private fun inflatedLength(section: ByteBuffer, type: Int): Int {
+        if (section.remaining() < INFLATED_LENGTH_SIZE) {
+            throw IOException("Truncated deflated section $type")
+        }
+        val length = section.getLong(section.position())
+        if (length < 0 || length > Int.MAX_VALUE) {
+            throw IOException("Deflated section $type is too large: $length bytes")
+        }
+        return length.toInt()
+    }
+
+    private fun inflate(section: ByteBuffer): DataInputStream {
+        val data = section.duplicate()
+        data.position(data.position() + INFLATED_LENGTH_SIZE)
+        val inflater = Inflater()
+        val input = object : InflaterInputStream(ByteBufferInputStream(data), inflater, STREAM_BUFFER_SIZE) {
+            override fun close() {
+                // InflaterInputStream only ends the inflaters it creates itself
+                super.close()
+                inflater.end()
+            }
+        }
+        return DataInputStream(input)
+    }
+
+    /** Collects sections and writes them as a container. */
+    class Builder {
+        private val mSections = LinkedHashMap<Int, ByteArray>()
+        private val mFlags = HashMap<Int, Int>()
+
+        fun addSection(type: Int, bytes: ByteArray): Builder {
+            mSections[type] = bytes
+            mFlags.remove(type)
+            return this
+        }
+
+        /**
+         * Adds a section deflated at [level], from [Deflater.BEST_SPEED] to [Deflater.BEST_COMPRESSION]
+         * or [Deflater.DEFAULT_COMPRESSION]. The section is stored raw if deflating does not shrink it,
+         * e.g. for an already compressed PNG.
+         */
+        fun addDeflatedSection(type: Int, bytes: ByteArray, level: Int): Builder {
+            require(level == Deflater.DEFAULT_COMPRESSION || level in Deflater.BEST_SPEED..Deflater.BEST_COMPRESSION) {
+                "Invalid deflate level $level"
+            }
+            val out = ByteArrayOutputStream(bytes.size / 4 + INFLATED_LENGTH_SIZE)
+            DataOutputStream(out).writeLong(bytes.size.toLong())
+            val deflater = Deflater(level)
+            try {
+                DeflaterOutputStream(out, deflater, STREAM_BUFFER_SIZE).use { it.write(bytes) }
+            } finally {
+                deflater.end()
+            }
+            if (out.size() >= bytes.size) {
+                return addSection(type, bytes)
+            }
+            mSections[type] = out.toByteArray()
+            mFlags[type] = FLAG_DEFLATE
+            return this
+        }
+
+        @Throws(IOException::class)
+        fun writeTo(out: OutputStream) {
+            val output = DataOutputStream(out)
+            output.write(MAGIC)
+            output.writeShort(FORMAT_VERSION)
+            output.writeShort(mSections.size)
+            var offset = HEADER_SIZE + mSections.size.toLong() * SECTION_ENTRY_SIZE
+            for ((type, bytes) in mSections) {
+                output.writeInt(type)
+                output.writeInt(mFlags[type] ?: 0)
+                output.writeLong(offset)
+                output.writeLong(bytes.size.toLong())
+                offset += bytes.size
+            }
+            for (bytes in mSections.values) {
+                output.write(bytes)
+            }
+            output.flush()
+        }
+    }
+
+    companion object {
+        const val SECTION_OPTIONS = 1
+        const val SECTION_HIERARCHY = 2
+        const val SECTION_PREVIEW = 3
+        const val SECTION_WINDOWS = 4
+
+        /** The section is deflated, see [Builder.addDeflatedSection]. */
+        const val FLAG_DEFLATE = 1
+
+        const val FORMAT_VERSION = 3
+
+        private val MAGIC = byteArrayOf('L'.code.toByte(), 'I'.code.toByte(), 'V'.code.toByte(), '2'.code.toByte())
+        private const val HEADER_SIZE = 8
+        private const val SECTION_ENTRY_SIZE = 24
+        private const val INFLATED_LENGTH_SIZE = 8
+        private const val WINDOW_LENGTH_SIZE = 8
+        private const val STREAM_BUFFER_SIZE = 64 * 1024
+
+        /** Whether [buffer] starts with a container header rather than a legacy object stream. */
+        @JvmStatic
+        fun isContainer(buffer: ByteBuffer): Boolean {
+            if (buffer.remaining() < HEADER_SIZE) {
+                return false
+            }
+            val start = buffer.position()
+            return MAGIC.indices.all { buffer.get(start + it) == MAGIC[it] }
+        }
+
+        /** Returns the [SECTION_WINDOWS] of the windows written in [containers], bottom first. */
+        @JvmStatic
+        fun writeWindows(containers: List<ByteArray>): ByteArray {
+            require(containers.size <= 0xFFFF) { "Too many windows: ${containers.size}" }
+            val out = ByteArrayOutputStream(2 + containers.sumOf { WINDOW_LENGTH_SIZE + it.size })
+            val output = DataOutputStream(out)
+            output.writeShort(containers.size)
+            for (container in containers) {
+                output.writeLong(container.size.toLong())
+                output.write(container)
+            }
+            output.flush()
+            return out.toByteArray()
+        }
+
+        /** Returns the containers of the windows in a [SECTION_WINDOWS], as slices of [section]. */
+        @Throws(IOException::class)
+        @JvmStatic
+        fun readWindows(section: ByteBuffer): List<ByteBuffer> {
+            val data = section.slice()
+            if (data.remaining() < 2) {
+                throw IOException("Truncated window section")
+            }
+            val count = data.short.toInt() and 0xFFFF
+            val windows = ArrayList<ByteBuffer>(count)
+            for (i in 0 until count) {
+                if (data.remaining() < WINDOW_LENGTH_SIZE) {
+                    throw IOException("Truncated window section")
+                }
+                val length = data.long
+                if (length < 0 || length > data.remaining()) {
+                    throw IOException("Window $i is out of the section bounds")
+                }
+                val window = data.slice()
+                window.limit(length.toInt())
+                windows.add(window)
+                data.position(data.position() + length.toInt())
+            }
+            return windows
+        }
+
+        /** Maps the whole [file] read only. The mapping stays valid once the channel is closed. */
+        @Throws(IOException::class)
+        @JvmStatic
+        fun map(file: File): ByteBuffer {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+        }
+
+        /** Reads the container in the remaining bytes of [buffer]. */
+        @Throws(IOException::class)
+        @JvmStatic
+        fun read(buffer: ByteBuffer): LayoutFileContainer {
+            val data = buffer.slice()
+            if (!isContainer(data)) {
+                throw IOException("Not a layout file container")
+            }
+            val version = data.getShort(4).toInt() and 0xFFFF
+            if (version != FORMAT_VERSION) {
+                throw IOException("Unsupported layout file version $version")
+            }
+            val count = data.getShort(6).toInt() and 0xFFFF
+            if (data.limit() < HEADER_SIZE + count * SECTION_ENTRY_SIZE) {
+                throw IOException("Truncated layout file section table")
+            }
+            val sections = HashMap<Int, ByteBuffer>()
+            val sectionFlags = HashMap<Int, Int>()
+            for (i in 0 until count) {
+                val entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE
+                val type = data.getInt(entry)
+                val flags = data.getInt(entry + 4)
+                if (flags and FLAG_DEFLATE.inv() != 0) {
+                    throw IOException("Unsupported flags $flags for section $type")
+                }
+                val offset = data.getLong(entry + 8)
+                val length = data.getLong(entry + 16)
+                if (offset < 0 || length < 0 || offset + length > data.limit()) {
+                    throw IOException("Section $type is out of the file bounds")
+                }
+                val section = data.duplicate()
+                section.position(offset.toInt())
+                section.limit((offset + length).toInt())
+                sections[type] = section.slice()
+                sectionFlags[type] = flags
+            }
+            return LayoutFileContainer(sections, sectionFlags)
+        }
+    }
+}
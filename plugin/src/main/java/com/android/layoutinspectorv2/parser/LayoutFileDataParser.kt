@@ -17,14 +17,17 @@ package com.android.layoutinspectorv2.parser
 
 import com.android.layoutinspectorv2.LayoutInspectorCaptureOptions
 import com.android.layoutinspectorv2.model.LayoutFileData
+import com.android.layoutinspectorv2.model.MultiWindowSnapshot
 import com.android.layoutinspectorv2.model.ViewNode
+import com.intellij.util.concurrency.AppExecutorUtil
 import java.awt.image.BufferedImage
-import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.IOException
+import java.io.InputStream
 import java.io.ObjectInputStream
-import java.nio.file.Files
-import javax.imageio.ImageIO
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Future
 
 object LayoutFileDataParser {
     /**
@@ -34,43 +37,257 @@ object LayoutFileDataParser {
     @JvmStatic
     val SKIPPED_PROPERTIES = listOf("bg_", "fg_")
 
+    // the first paint of a preview shows one pixel out of 4 in each direction
+    private const val PREVIEW_SUBSAMPLING = 4
+
+    /** Receives the parts of a layout file as soon as they are available, see [parseFromFile]. */
+    interface Listener {
+        /**
+         * Called with the hierarchy before the preview is decoded, the data has no image. An
+         * exception thrown here aborts the parse, which lets callers cancel before the preview is
+         * decoded.
+         */
+        fun hierarchyParsed(data: LayoutFileData)
+
+        /**
+         * Called from a pooled thread with a subsampled preview to paint until the full image is
+         * decoded. It may not be called at all, or be called once the full image is decoded.
+         */
+        fun previewSampled(image: BufferedImage)
+    }
+
     @Throws(IOException::class)
     @JvmStatic
     fun parseFromFile(file: File): LayoutFileData {
-        return parseFromBytes(Files.readAllBytes(file.toPath()))
+        return parseFromFile(file, NodeTableCache.instance)
+    }
+
+    /**
+     * Parses [file], loading its hierarchy from [cache] when the same options and hierarchy were
+     * parsed before. Otherwise the parsed hierarchy is added to the cache in the background.
+     */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun parseFromFile(file: File, cache: NodeTableCache?): LayoutFileData {
+        return parseFromFile(file, cache, null)
     }
 
+    /**
+     * Same as [parseFromFile] but hands the hierarchy to [listener] as soon as it is available,
+     * and a subsampled preview while the full image is decoded.
+     */
     @Throws(IOException::class)
     @JvmStatic
+    fun parseFromFile(file: File, cache: NodeTableCache?, listener: Listener?): LayoutFileData {
+        val buffer = LayoutFileContainer.map(file)
+        // the cache holds the hierarchies of single windows
+        if (cache == null || isMultiWindow(buffer)) {
+            return parseFromBuffer(buffer, SKIPPED_PROPERTIES, null, listener)
+        }
+        val key = cache.keyOf(hierarchyParts(buffer), SKIPPED_PROPERTIES)
+        val cached = cache.load(key)
+        if (cached != null) {
+            return parseFromBuffer(buffer, SKIPPED_PROPERTIES, cached, listener)
+        }
+        val data = parseFromBuffer(buffer, SKIPPED_PROPERTIES, null, object : Listener {
+            override fun hierarchyParsed(data: LayoutFileData) {
+                data.node?.let { cache.storeAsync(key, it) }
+                listener?.hierarchyParsed(data)
+            }
+
+            override fun previewSampled(image: BufferedImage) {
+                listener?.previewSampled(image)
+            }
+        })
+        return data
+    }
+
+    @Throws(IOException::class)
+    @JvmStatic
+    @JvmOverloads
     fun parseFromBytes(
         bytes: ByteArray,
         skippedProperties: Collection<String> = SKIPPED_PROPERTIES
     ): LayoutFileData {
-        val bufferedImage: BufferedImage?
-        var node: ViewNode? = null
-        var options = LayoutInspectorCaptureOptions()
+        return parseFromBuffer(ByteBuffer.wrap(bytes), skippedProperties)
+    }
+
+    /**
+     * Parses a layout file from the remaining bytes of [buffer]. The sections of a
+     * [LayoutFileContainer] are parsed in place, legacy files are read through their object
+     * stream framing.
+     */
+    @Throws(IOException::class)
+    @JvmStatic
+    @JvmOverloads
+    fun parseFromBuffer(
+        buffer: ByteBuffer,
+        skippedProperties: Collection<String> = SKIPPED_PROPERTIES
+    ): LayoutFileData {
+        return parseFromBuffer(buffer, skippedProperties, null, null)
+    }
+
+    /** Parses a layout file whose hierarchy is [cachedNode] if not null. */
+    private fun parseFromBuffer(
+        buffer: ByteBuffer,
+        skippedProperties: Collection<String>,
+        cachedNode: ViewNode?,
+        listener: Listener?
+    ): LayoutFileData {
+        if (!LayoutFileContainer.isContainer(buffer)) {
+            return parseLegacy(buffer, skippedProperties, cachedNode, listener)
+        }
+        val container = LayoutFileContainer.read(buffer)
+        val windows = container.section(LayoutFileContainer.SECTION_WINDOWS)
+        if (windows != null) {
+            return parseWindows(container, LayoutFileContainer.readWindows(windows), skippedProperties, listener)
+        }
+        return parseContainer(container, skippedProperties, cachedNode, listener)
+    }
+
+    private fun isMultiWindow(buffer: ByteBuffer): Boolean {
+        return LayoutFileContainer.isContainer(buffer)
+                && LayoutFileContainer.read(buffer).hasSection(LayoutFileContainer.SECTION_WINDOWS)
+    }
+
+    /**
+     * Returns the parts of a layout file that its hierarchy is parsed from: the options and the
+     * hierarchy sections as stored. The preview, most of the file, is not part of them.
+     */
+    private fun hierarchyParts(buffer: ByteBuffer): List<ByteBuffer> {
+        if (!LayoutFileContainer.isContainer(buffer)) {
+            // legacy files interleave them in a single object stream
+            return listOf(buffer)
+        }
+        val container = LayoutFileContainer.read(buffer)
+        return listOf(LayoutFileContainer.SECTION_OPTIONS, LayoutFileContainer.SECTION_HIERARCHY).map {
+            container.storedSection(it) ?: ByteBuffer.allocate(0)
+        }
+    }
+
+    /**
+     * Parses a capture of several windows, the bottom one in [main] and the others in [windows].
+     * [listener] receives their composed hierarchy once every window is parsed, their previews
+     * are not sampled. See [MultiWindowSnapshot].
+     */
+    private fun parseWindows(
+        main: LayoutFileContainer,
+        windows: List<ByteBuffer>,
+        skippedProperties: Collection<String>,
+        listener: Listener?
+    ): LayoutFileData {
+        val data = ArrayList<LayoutFileData>(windows.size + 1)
+        data.add(parseContainer(main, skippedProperties, null, null))
+        for (window in windows) {
+            data.add(parseContainer(LayoutFileContainer.read(window), skippedProperties, null, null))
+        }
+        val composed = MultiWindowSnapshot.compose(data)
+        listener?.hierarchyParsed(composed.copy(bufferedImage = null))
+        return composed
+    }
 
-        var previewBytes = ByteArray(0)
+    /** Parses the sections of a [container] of a single window. */
+    private fun parseContainer(
+        container: LayoutFileContainer,
+        skippedProperties: Collection<String>,
+        cachedNode: ViewNode?,
+        listener: Listener?
+    ): LayoutFileData {
+        val options = LayoutInspectorCaptureOptions()
+        val optionsSection = container.section(LayoutFileContainer.SECTION_OPTIONS)
+            ?: throw IOException("Missing capture options")
+        options.parse(StandardCharsets.UTF_8.decode(optionsSection).toString())
 
-        ObjectInputStream(ByteArrayInputStream(bytes)).use { input ->
+        val preview = if (container.hasSection(LayoutFileContainer.SECTION_PREVIEW)) {
+            { container.sectionStream(LayoutFileContainer.SECTION_PREVIEW)!! }
+        } else {
+            null
+        }
+        // a deflated hierarchy is only inflated when it is parsed, not when it is cached
+        return parseSections(preview, options, cachedNode, listener) {
+            val hierarchy = container.section(LayoutFileContainer.SECTION_HIERARCHY)
+                ?: throw IOException("Missing view hierarchy")
+            parseViewNode(hierarchy, options, skippedProperties)
+        }
+    }
+
+    /** Files written before [LayoutFileContainer]: the options and two blobs in an object stream. */
+    private fun parseLegacy(
+        buffer: ByteBuffer,
+        skippedProperties: Collection<String>,
+        cachedNode: ViewNode?,
+        listener: Listener?
+    ): LayoutFileData {
+        val options = LayoutInspectorCaptureOptions()
+        val nodeBytes: ByteArray
+        val previewBytes: ByteArray
+
+        ObjectInputStream(ByteBufferInputStream(buffer)).use { input ->
             // Parse options
             options.parse(input.readUTF())
 
-            // Parse view node
-            val nodeBytes = ByteArray(input.readInt())
+            // View node
+            nodeBytes = ByteArray(input.readInt())
             input.readFully(nodeBytes)
-            node = ViewNodeParser.parse(nodeBytes, options.version, skippedProperties)
-            if (node == null) {
-                throw IOException("Error parsing view node")
-            }
 
             // Preview image
             previewBytes = ByteArray(input.readInt())
             input.readFully(previewBytes)
         }
 
-        bufferedImage = ImageIO.read(ByteArrayInputStream(previewBytes))
+        return parseSections({ ByteBufferInputStream(ByteBuffer.wrap(previewBytes)) }, options, cachedNode, listener) {
+            parseViewNode(ByteBuffer.wrap(nodeBytes), options, skippedProperties)
+        }
+    }
+
+    /**
+     * Parses the hierarchy while the preview is decoded on a pooled thread. Decoding a large PNG
+     * takes about as long as parsing the hierarchy, so neither waits on the other. With a
+     * [listener], a subsampled preview is decoded on another thread for the first paint.
+     * [preview] opens a new stream over the preview at each call.
+     */
+    private inline fun parseSections(
+        noinline preview: (() -> InputStream)?,
+        options: LayoutInspectorCaptureOptions,
+        cachedNode: ViewNode?,
+        listener: Listener?,
+        parseHierarchy: () -> ViewNode
+    ): LayoutFileData {
+        val image = preview?.let { PreviewImageDecoder.decodeAsync(it()) }
+        val sample = if (preview != null && listener != null) sampleAsync(preview(), image!!, listener) else null
+        try {
+            val node = cachedNode ?: parseHierarchy()
+            listener?.hierarchyParsed(LayoutFileData(null, node, options))
+
+            val bufferedImage = image?.let { PreviewImageDecoder.await(it) }
+            return LayoutFileData(bufferedImage, node, options)
+        } finally {
+            // no-op once the images are decoded, stops the decoders when parsing failed or was aborted
+            image?.cancel(true)
+            sample?.cancel(true)
+        }
+    }
+
+    /** Decodes a subsampled [preview] for [listener], unless the full [image] is decoded first. */
+    private fun sampleAsync(preview: InputStream, image: Future<*>, listener: Listener): Future<*> {
+        return AppExecutorUtil.getAppExecutorService().submit {
+            try {
+                val sample = PreviewImageDecoder.decodeSampled(preview, PREVIEW_SUBSAMPLING)
+                if (sample != null && !image.isDone) {
+                    listener.previewSampled(sample)
+                }
+            } catch (e: IOException) {
+                // the full image reports decoding errors
+            }
+        }
+    }
 
-        return LayoutFileData(bufferedImage, node, options)
+    private fun parseViewNode(
+        hierarchy: ByteBuffer,
+        options: LayoutInspectorCaptureOptions,
+        skippedProperties: Collection<String>
+    ): ViewNode {
+        return ViewNodeParser.parse(hierarchy, options.version, skippedProperties, options.projection, true, true)
+            ?: throw IOException("Error parsing view node")
     }
 }
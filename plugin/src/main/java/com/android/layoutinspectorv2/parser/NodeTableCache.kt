@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.model.DisplayInfo
+import com.android.layoutinspectorv2.model.PropertyKey
+import com.android.layoutinspectorv2.model.PropertyKeyTable
+import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.model.ViewProperty
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.IdentityHashMap
+import java.util.concurrent.TimeUnit
+
+private const val META_GROUP = "meta"
+
+private const val FLAG_WILL_NOT_DRAW = 1
+private const val FLAG_VISIBLE = 2
+private const val FLAG_CLIP_CHILDREN = 4
+// the node does not show its "meta" properties as a group, like v2 nodes
+private const val FLAG_META_HIDDEN = 8
+
+/**
+ * On-disk cache of parsed view hierarchies, keyed by a hash of the layout file content.
+ *
+ * Reopening a capture loads its node table instead of decoding the hierarchy again. A table
+ * holds the tree as parent indices, the strings once each, the property keys and the typed
+ * property values, and the [DisplayInfo] of every node, in flat arrays that are read back with
+ * bulk buffer reads. The properties stay in the loaded bytes until a node is queried:
+ *
+ * ```
+ * magic "LIVC", format version
+ * strings      count, lengths[], utf-8 bytes
+ * keys         count, fullName[], name[], category[]      (string indices, -1 for null)
+ * nodes        count, parent[], name[], hash[], id[], index[], flags[],
+ *              geometry[6 * count], transform[4 * count], contentDescription[], firstProperty[count + 1],
+ *              firstNamed[count + 1]
+ * properties   count, key[], type[], bits[], text[]
+ * named        count, name[], property[]                  (the named properties of each node)
+ * ```
+ *
+ * Tables are evicted once older than [maxAgeMillis] since their last use, and least recently used
+ * first when the cache grows over [maxBytes]. The .liv2 files are not changed.
+ */
+class NodeTableCache(
+    private val directory: File,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES,
+    private val maxAgeMillis: Long = DEFAULT_MAX_AGE_MILLIS
+) {
+    /**
+     * Returns the cache key of a hierarchy stored in [parts], e.g. the options and the hierarchy
+     * sections of a layout file, parsed skipping [skippedProperties] by parsers of
+     * [ViewNodeParser.TREE_VERSION].
+     */
+    fun keyOf(parts: List<ByteBuffer>, skippedProperties: Collection<String>): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(FORMAT_VERSION.toByte())
+        digest.update(ViewNodeParser.TREE_VERSION.toByte())
+        for (name in skippedProperties) {
+            digest.update(name.toByteArray(StandardCharsets.UTF_8))
+            digest.update(0.toByte())
+        }
+        val length = ByteBuffer.allocate(8)
+        for (part in parts) {
+            // the length keeps the bytes of adjacent parts apart
+            length.clear()
+            digest.update(length.putLong(0, part.remaining().toLong()))
+            digest.update(part.duplicate())
+        }
+        return digest.digest().joinToString("") { String.format("%02x", it) }
+    }
+
+    /** Returns the hierarchy stored under [key], or null if there is none or it cannot be read. */
+    fun load(key: String): ViewNode? {
+        val file = fileOf(key)
+        if (!file.isFile) {
+            return null
+        }
+        return try {
+            val root = readTable(Files.readAllBytes(file.toPath()))
+            file.setLastModified(System.currentTimeMillis())
+            root
+        } catch (e: IOException) {
+            LOG.warn("Dropping unreadable node table $file", e)
+            file.delete()
+            null
+        } catch (e: RuntimeException) {
+            // truncated or corrupt: underflows, out of range indices, negative counts
+            LOG.warn("Dropping corrupt node table $file", e)
+            file.delete()
+            null
+        }
+    }
+
+    /**
+     * Stores the hierarchy of [root] under [key] on a pooled thread. The properties of the nodes
+     * that were not loaded yet are decoded into copies, the nodes of [root] stay lazy.
+     */
+    fun storeAsync(key: String, root: ViewNode) {
+        AppExecutorUtil.getAppExecutorService().execute {
+            try {
+                store(key, root)
+            } catch (e: IOException) {
+                LOG.warn("Unable to store node table $key", e)
+            }
+        }
+    }
+
+    @Throws(IOException::class)
+    fun store(key: String, root: ViewNode) {
+        if (!directory.isDirectory && !directory.mkdirs()) {
+            throw IOException("Unable to create $directory")
+        }
+        // write aside and move, readers never see a partial table
+        val temp = File.createTempFile(key, TEMP_SUFFIX, directory)
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp), 1 shl 16)).use { writeTable(it, root) }
+            Files.move(temp.toPath(), fileOf(key).toPath(), StandardCopyOption.REPLACE_EXISTING)
+        } finally {
+            temp.delete()
+        }
+        evict()
+    }
+
+    /** Deletes the tables unused for [maxAgeMillis], then the least recently used over [maxBytes]. */
+    fun evict() {
+        val files = directory.listFiles { file -> file.name.endsWith(SUFFIX) } ?: return
+        val now = System.currentTimeMillis()
+        val kept = files.filter { file ->
+            val expired = now - file.lastModified() > maxAgeMillis
+            if (expired) {
+                file.delete()
+            }
+            !expired
+        }.sortedByDescending { it.lastModified() }
+
+        var size = 0L
+        for (file in kept) {
+            size += file.length()
+            if (size > maxBytes) {
+                file.delete()
+            }
+        }
+    }
+
+    private fun fileOf(key: String): File {
+        return File(directory, key + SUFFIX)
+    }
+
+    private fun writeTable(out: DataOutputStream, root: ViewNode) {
+        val nodes = ArrayList<ViewNode>()
+        collect(root, nodes)
+
+        val strings = LinkedHashMap<String, Int>()
+        fun stringIndex(s: String?): Int = if (s == null) -1 else strings.getOrPut(s) { strings.size }
+        val keys = LinkedHashMap<PropertyKey, Int>()
+        val properties = ArrayList<ViewProperty>()
+        val parents = IntArray(nodes.size)
+        // nodes are data classes, equal nodes may be different views
+        val nodeIndices = IdentityHashMap<ViewNode, Int>(nodes.size)
+        val firstProperty = IntArray(nodes.size + 1)
+        val firstNamed = IntArray(nodes.size + 1)
+        val namedNames = ArrayList<String>()
+        val namedProperties = ArrayList<Int>()
+        val metaHidden = BooleanArray(nodes.size)
+
+        for ((i, node) in nodes.withIndex()) {
+            nodeIndices[node] = i
+            parents[i] = node.parent?.let { nodeIndices[it] } ?: -1
+            // lazy nodes are decoded aside and dropped once written
+            val full = node.withAllProperties()
+            val nodeProperties = full.properties
+            firstProperty[i] = properties.size
+            firstNamed[i] = namedNames.size
+            val propertyIndices = IdentityHashMap<ViewProperty, Int>(nodeProperties.size)
+            for (property in nodeProperties) {
+                propertyIndices[property] = properties.size
+                properties.add(property)
+            }
+            for ((name, property) in full.namedProperties) {
+                val index = propertyIndices[property] ?: continue
+                namedNames.add(name)
+                namedProperties.add(index)
+            }
+            metaHidden[i] = !full.groupedProperties.containsKey(META_GROUP)
+        }
+        firstProperty[nodes.size] = properties.size
+        firstNamed[nodes.size] = namedNames.size
+        for (property in properties) {
+            keys.getOrPut(property.key) { keys.size }
+        }
+
+        // strings are indexed before the table is written
+        val nodeNames = IntArray(nodes.size) { stringIndex(nodes[it].name) }
+        val hashes = IntArray(nodes.size) { stringIndex(nodes[it].hash) }
+        val ids = IntArray(nodes.size) { stringIndex(nodes[it].id) }
+        val descriptions = IntArray(nodes.size) { stringIndex(nodes[it].displayInfo.contentDesc) }
+        val keyFullNames = keys.keys.map { stringIndex(it.fullName) }
+        val keyNames = keys.keys.map { stringIndex(it.name) }
+        val keyCategories = keys.keys.map { stringIndex(it.category) }
+        val texts = IntArray(properties.size) { stringIndex(properties[it].text) }
+        val namedNameIndices = IntArray(namedNames.size) { stringIndex(namedNames[it]) }
+
+        out.writeInt(MAGIC)
+        out.writeInt(FORMAT_VERSION)
+
+        val encoded = strings.keys.map { it.toByteArray(StandardCharsets.UTF_8) }
+        out.writeInt(encoded.size)
+        encoded.forEach { out.writeInt(it.size) }
+        encoded.forEach { out.write(it) }
+
+        out.writeInt(keys.size)
+        keyFullNames.forEach { out.writeInt(it) }
+        keyNames.forEach { out.writeInt(it) }
+        keyCategories.forEach { out.writeInt(it) }
+
+        out.writeInt(nodes.size)
+        parents.forEach { out.writeInt(it) }
+        nodeNames.forEach { out.writeInt(it) }
+        hashes.forEach { out.writeInt(it) }
+        ids.forEach { out.writeInt(it) }
+        nodes.forEach { out.writeInt(it.index) }
+        for ((i, node) in nodes.withIndex()) {
+            val info = node.displayInfo
+            var flags = 0
+            if (info.willNotDraw) {
+                flags = flags or FLAG_WILL_NOT_DRAW
+            }
+            if (info.isVisible) {
+                flags = flags or FLAG_VISIBLE
+            }
+            if (info.clipChildren) {
+                flags = flags or FLAG_CLIP_CHILDREN
+            }
+            if (metaHidden[i]) {
+                flags = flags or FLAG_META_HIDDEN
+            }
+            out.writeByte(flags)
+        }
+        for (node in nodes) {
+            val info = node.displayInfo
+            out.writeInt(info.left)
+            out.writeInt(info.top)
+            out.writeInt(info.width)
+            out.writeInt(info.height)
+            out.writeInt(info.scrollX)
+            out.writeInt(info.scrollY)
+        }
+        for (node in nodes) {
+            val info = node.displayInfo
+            out.writeFloat(info.translateX)
+            out.writeFloat(info.translateY)
+            out.writeFloat(info.scaleX)
+            out.writeFloat(info.scaleY)
+        }
+        descriptions.forEach { out.writeInt(it) }
+        firstProperty.forEach { out.writeInt(it) }
+        firstNamed.forEach { out.writeInt(it) }
+
+        out.writeInt(properties.size)
+        properties.forEach { out.writeInt(keys[it.key]!!) }
+        properties.forEach { out.writeByte(it.type.ordinal) }
+        properties.forEach { out.writeLong(it.bits) }
+        texts.forEach { out.writeInt(it) }
+
+        out.writeInt(namedNames.size)
+        namedNameIndices.forEach { out.writeInt(it) }
+        namedProperties.forEach { out.writeInt(it) }
+    }
+
+    /**
+     * Reads a table written by [writeTable]. The tree and the [DisplayInfo] of the nodes are built
+     * right away, their properties are decoded from [bytes] once queried, see [PropertyBlock].
+     */
+    @Throws(IOException::class)
+    private fun readTable(bytes: ByteArray): ViewNode? {
+        val buffer = ByteBuffer.wrap(bytes)
+        if (buffer.int != MAGIC || buffer.int != FORMAT_VERSION) {
+            throw IOException("Not a node table of version $FORMAT_VERSION")
+        }
+
+        val lengths = readInts(buffer, buffer.int)
+        val offsets = IntArray(lengths.size + 1)
+        offsets[0] = buffer.position()
+        for (i in lengths.indices) {
+            if (lengths[i] < 0) {
+                throw IOException("Negative string length ${lengths[i]}")
+            }
+            offsets[i + 1] = offsets[i] + lengths[i]
+        }
+        buffer.position(offsets[lengths.size])
+        val strings = TableStrings(bytes, offsets)
+
+        val keyCount = buffer.int
+        val keyFullNames = readInts(buffer, keyCount)
+        val keyNames = readInts(buffer, keyCount)
+        val keyCategories = readInts(buffer, keyCount)
+        val keyTable = PropertyKeyTable()
+        val keys = Array(keyCount) {
+            keyTable.create(strings[keyFullNames[it]]!!, strings[keyNames[it]]!!, strings[keyCategories[it]])
+        }
+        keyTable.rankKeys()
+
+        val nodeCount = buffer.int
+        if (nodeCount == 0) {
+            return null
+        }
+        val parents = readInts(buffer, nodeCount)
+        val names = readInts(buffer, nodeCount)
+        val hashes = readInts(buffer, nodeCount)
+        val ids = readInts(buffer, nodeCount)
+        val indices = readInts(buffer, nodeCount)
+        val flags = ByteArray(nodeCount)
+        buffer.get(flags)
+        val geometry = readInts(buffer, 6 * nodeCount)
+        val transforms = FloatArray(4 * nodeCount)
+        buffer.asFloatBuffer().get(transforms)
+        buffer.position(buffer.position() + 4 * transforms.size)
+        val descriptions = readInts(buffer, nodeCount)
+        val firstProperty = readInts(buffer, nodeCount + 1)
+        val firstNamed = readInts(buffer, nodeCount + 1)
+        val properties = PropertyBlock.read(buffer, strings, keys, firstProperty, firstNamed, flags)
+
+        val nodes = arrayOfNulls<ViewNode>(nodeCount)
+        for (i in 0 until nodeCount) {
+            val parent = if (parents[i] < 0) null else nodes[parents[i]]
+            val node = ViewNode(parent, strings[names[i]]!!, strings[hashes[i]]!!)
+            nodes[i] = node
+            parent?.children?.add(node)
+            node.index = indices[i]
+            node.id = strings[ids[i]]
+            if (firstProperty[i] < firstProperty[i + 1]) {
+                node.setPropertyLoader(ViewNode.PropertyLoader { properties.load(it, i) })
+            }
+
+            val f = flags[i].toInt()
+            node.displayInfo = DisplayInfo(
+                f and FLAG_WILL_NOT_DRAW != 0,
+                f and FLAG_VISIBLE != 0,
+                geometry[6 * i],
+                geometry[6 * i + 1],
+                geometry[6 * i + 2],
+                geometry[6 * i + 3],
+                geometry[6 * i + 4],
+                geometry[6 * i + 5],
+                f and FLAG_CLIP_CHILDREN != 0,
+                transforms[4 * i],
+                transforms[4 * i + 1],
+                transforms[4 * i + 2],
+                transforms[4 * i + 3],
+                strings[descriptions[i]]
+            )
+        }
+
+        val root = nodes[0]!!
+        root.updateNodeDrawn(true)
+        return root
+    }
+
+    private fun readInts(buffer: ByteBuffer, count: Int): IntArray {
+        val values = IntArray(count)
+        buffer.asIntBuffer().get(values)
+        buffer.position(buffer.position() + 4 * count)
+        return values
+    }
+
+    private fun collect(node: ViewNode, nodes: MutableList<ViewNode>) {
+        nodes.add(node)
+        node.children.forEach { collect(it, nodes) }
+    }
+
+    companion object {
+        private val LOG = Logger.getInstance(NodeTableCache::class.java)
+
+        private const val MAGIC = 0x4C495643 // "LIVC"
+        private const val FORMAT_VERSION = 1
+        private const val SUFFIX = ".nodes"
+        private const val TEMP_SUFFIX = ".tmp"
+
+        const val DEFAULT_MAX_BYTES = 256L * 1024 * 1024
+        @JvmField
+        val DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30)
+
+        /** The cache in the system directory of the IDE. */
+        @JvmStatic
+        val instance: NodeTableCache by lazy {
+            NodeTableCache(File(PathManager.getSystemPath(), "layoutinspectorv2/node-tables"))
+        }
+    }
+}
+
+/** The strings of a loaded table, decoded from its bytes when first used. */
+private class TableStrings(private val mBytes: ByteArray, private val mOffsets: IntArray) {
+    // nodes load their properties from any thread, a race only decodes a string twice
+    private val mStrings = arrayOfNulls<String>(mOffsets.size - 1)
+
+    val size: Int
+        get() = mStrings.size
+
+    /** Returns the string at [index], null for -1. */
+    operator fun get(index: Int): String? {
+        if (index < 0) {
+            return null
+        }
+        return mStrings[index] ?: Utf8StringCache.newString(mBytes, mOffsets[index], mOffsets[index + 1] - mOffsets[index])
+            .also { mStrings[index] = it }
+    }
+}
+
+/**
+ * The properties and named properties of a loaded table, left in its bytes and decoded one node
+ * at a time with absolute reads. [read] checks every index up front, so a corrupt table is still
+ * dropped when it is loaded rather than failing once a node is selected.
+ */
+private class PropertyBlock private constructor(
+    private val mBuffer: ByteBuffer,
+    private val mStrings: TableStrings,
+    private val mKeys: Array<PropertyKey>,
+    private val mFirstProperty: IntArray,
+    private val mFirstNamed: IntArray,
+    private val mFlags: ByteArray,
+    private val mKeyOffset: Int,
+    private val mTypeOffset: Int,
+    private val mBitsOffset: Int,
+    private val mTextOffset: Int,
+    private val mNamedNameOffset: Int,
+    private val mNamedPropertyOffset: Int
+) {
+    /** Adds the properties of the node at [index] of the table to [node]. */
+    fun load(node: ViewNode, index: Int) {
+        val first = mFirstProperty[index]
+        val properties = arrayOfNulls<ViewProperty>(mFirstProperty[index + 1] - first)
+        for (i in properties.indices) {
+            val p = first + i
+            val property = ViewProperty.of(
+                mKeys[mBuffer.getInt(mKeyOffset + 4 * p)],
+                TYPES[mBuffer.get(mTypeOffset + p).toInt()],
+                mBuffer.getLong(mBitsOffset + 8 * p),
+                mStrings[mBuffer.getInt(mTextOffset + 4 * p)]
+            )
+            properties[i] = property
+            node.properties.add(property)
+            node.addPropertyToGroup(property)
+        }
+        for (n in mFirstNamed[index] until mFirstNamed[index + 1]) {
+            val name = mStrings[mBuffer.getInt(mNamedNameOffset + 4 * n)]!!
+            node.namedProperties[name] = properties[mBuffer.getInt(mNamedPropertyOffset + 4 * n) - first]!!
+        }
+        if (mFlags[index].toInt() and FLAG_META_HIDDEN != 0) {
+            node.groupedProperties.remove(META_GROUP)
+        }
+    }
+
+    companion object {
+        private val TYPES = ViewProperty.Type.values()
+
+        /** Reads the property and named blocks at the position of [buffer], and moves past them. */
+        @Throws(IOException::class)
+        fun read(
+            buffer: ByteBuffer,
+            strings: TableStrings,
+            keys: Array<PropertyKey>,
+            firstProperty: IntArray,
+            firstNamed: IntArray,
+            flags: ByteArray
+        ): PropertyBlock {
+            val propertyCount = buffer.int
+            val keyOffset = skip(buffer, propertyCount, 4)
+            val typeOffset = skip(buffer, propertyCount, 1)
+            val bitsOffset = skip(buffer, propertyCount, 8)
+            val textOffset = skip(buffer, propertyCount, 4)
+            val namedCount = buffer.int
+            val namedNameOffset = skip(buffer, namedCount, 4)
+            val namedPropertyOffset = skip(buffer, namedCount, 4)
+
+            for (p in 0 until propertyCount) {
+                checkIndex(buffer.getInt(keyOffset + 4 * p), keys.size, "key")
+                checkIndex(buffer.get(typeOffset + p).toInt(), TYPES.size, "type")
+                // -1 for properties without text
+                val text = buffer.getInt(textOffset + 4 * p)
+                if (text < -1 || text >= strings.size) {
+                    throw IOException("Invalid text index $text")
+                }
+            }
+            for (i in 0 until firstProperty.size - 1) {
+                checkRange(firstProperty[i], firstProperty[i + 1], propertyCount, "properties")
+                checkRange(firstNamed[i], firstNamed[i + 1], namedCount, "named properties")
+                for (n in firstNamed[i] until firstNamed[i + 1]) {
+                    checkIndex(buffer.getInt(namedNameOffset + 4 * n), strings.size, "name")
+                    val property = buffer.getInt(namedPropertyOffset + 4 * n)
+                    if (property < firstProperty[i] || property >= firstProperty[i + 1]) {
+                        throw IOException("Named property $property is not a property of node $i")
+                    }
+                }
+            }
+            return PropertyBlock(
+                buffer, strings, keys, firstProperty, firstNamed, flags, keyOffset, typeOffset, bitsOffset,
+                textOffset, namedNameOffset, namedPropertyOffset
+            )
+        }
+
+        private fun skip(buffer: ByteBuffer, count: Int, size: Int): Int {
+            val offset = buffer.position()
+            if (count < 0 || count.toLong() * size > buffer.remaining()) {
+                throw IOException("Truncated node table")
+            }
+            buffer.position(offset + count * size)
+            return offset
+        }
+
+        private fun checkIndex(index: Int, size: Int, what: String) {
+            if (index < 0 || index >= size) {
+                throw IOException("Invalid $what index $index")
+            }
+        }
+
+        private fun checkRange(from: Int, to: Int, size: Int, what: String) {
+            if (from < 0 || to < from || to > size) {
+                throw IOException("Invalid $what range [$from, $to)")
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.parser
+
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.awt.AlphaComposite
+import java.awt.image.BufferedImage
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import javax.imageio.ImageIO
+import javax.imageio.stream.MemoryCacheImageInputStream
+
+/**
+ * Decodes preview images into [BufferedImage.TYPE_INT_ARGB_PRE], the format Java2D blits without
+ * converting, so painting a preview does not convert its pixels on every repaint.
+ *
+ * Previews are PNG as returned by the device, or [QoiCodec] images when captures are saved with
+ * [encodePreview]. Any other format ImageIO reads is accepted as well.
+ */
+object PreviewImageDecoder {
+    private const val MAGIC_SIZE = 4
+    private const val MAX_QOI_SIZE_RATIO = 1.5
+
+    /** Decodes the remaining bytes of [buffer], returns null if no reader understands them. */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun decode(buffer: ByteBuffer): BufferedImage? {
+        return decode(ByteBufferInputStream(buffer))
+    }
+
+    @Throws(IOException::class)
+    @JvmStatic
+    fun decode(bytes: ByteArray): BufferedImage? {
+        return decode(ByteBuffer.wrap(bytes))
+    }
+
+    /** Decodes and closes [input]. */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun decode(input: InputStream): BufferedImage? {
+        val stream = markable(input)
+        if (isQoi(stream)) {
+            return QoiCodec.decode(stream)
+        }
+        // ImageIO.read(InputStream) caches the stream in a temporary file by default.
+        // ImageIO.read closes the image stream itself.
+        val image = stream.use { ImageIO.read(MemoryCacheImageInputStream(it)) } ?: return null
+        return toDisplayFormat(image)
+    }
+
+    /**
+     * Decodes and closes [input], keeping one pixel out of [subsampling] in each direction. PNG
+     * still inflates all its rows but skips filtering and converting most pixels, which makes
+     * for a quick first paint. Returns null if [input] is not subsampled faster than it is
+     * decoded, e.g. for QOI images, or if no reader understands it.
+     */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun decodeSampled(input: InputStream, subsampling: Int): BufferedImage? {
+        val stream = markable(input)
+        stream.use {
+            if (isQoi(stream)) {
+                return null
+            }
+            val imageStream = MemoryCacheImageInputStream(stream)
+            val reader = ImageIO.getImageReaders(imageStream).asSequence().firstOrNull() ?: return null
+            try {
+                reader.input = imageStream
+                val param = reader.defaultReadParam
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0)
+                return toDisplayFormat(reader.read(0, param))
+            } finally {
+                reader.dispose()
+                imageStream.close()
+            }
+        }
+    }
+
+    /**
+     * Re-encodes the [png] preview returned by the device as a [QoiCodec] image, which opens
+     * several times faster. Returns [png] if it cannot be decoded, or if the QOI image would be
+     * more than [MAX_QOI_SIZE_RATIO] times as large, e.g. for photos or gradients.
+     */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun encodePreview(png: ByteArray): ByteArray {
+        val image = ImageIO.read(MemoryCacheImageInputStream(ByteArrayInputStream(png))) ?: return png
+        val qoi = QoiCodec.encode(image)
+        return if (qoi.size > png.size * MAX_QOI_SIZE_RATIO) png else qoi
+    }
+
+    private fun markable(input: InputStream): InputStream {
+        return if (input.markSupported()) input else BufferedInputStream(input)
+    }
+
+    /** Whether the markable [stream] starts with a [QoiCodec] image, leaves it where it was. */
+    private fun isQoi(stream: InputStream): Boolean {
+        val header = ByteArray(MAGIC_SIZE)
+        stream.mark(MAGIC_SIZE)
+        val length = stream.readUpTo(header)
+        stream.reset()
+        return QoiCodec.isQoi(header, length)
+    }
+
+    private fun InputStream.readUpTo(bytes: ByteArray): Int {
+        var count = 0
+        while (count < bytes.size) {
+            val read = read(bytes, count, bytes.size - count)
+            if (read < 0) {
+                break
+            }
+            count += read
+        }
+        return count
+    }
+
+    /** Starts decoding [input] on a pooled thread, see [await]. The stream is closed once read. */
+    @JvmStatic
+    fun decodeAsync(input: InputStream): Future<BufferedImage?> {
+        return AppExecutorUtil.getAppExecutorService().submit(Callable { decode(input) })
+    }
+
+    /** Waits for an image started by [decodeAsync], rethrowing what the decoder threw. */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun await(future: Future<BufferedImage?>): BufferedImage? {
+        try {
+            return future.get()
+        } catch (e: ExecutionException) {
+            throw e.cause as? IOException ?: e.cause as? RuntimeException ?: e.cause as? Error ?: IOException(e.cause)
+        } catch (e: InterruptedException) {
+            future.cancel(true)
+            Thread.currentThread().interrupt()
+            throw IOException("Interrupted while decoding preview", e)
+        }
+    }
+
+    /** Returns [image] as [BufferedImage.TYPE_INT_ARGB_PRE], copying it if it has another format. */
+    @JvmStatic
+    fun toDisplayFormat(image: BufferedImage): BufferedImage {
+        if (image.type == BufferedImage.TYPE_INT_ARGB_PRE) {
+            return image
+        }
+        val converted = BufferedImage(image.width, image.height, BufferedImage.TYPE_INT_ARGB_PRE)
+        val g = converted.createGraphics()
+        try {
+            g.composite = AlphaComposite.Src
+            g.drawImage(image, 0, 0, null)
+        } finally {
+            g.dispose()
+        }
+        return converted
+    }
+}
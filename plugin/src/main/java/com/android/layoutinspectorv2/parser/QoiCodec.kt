@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.layoutinspectorv2.parser
+
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Lossless image codec of the "Quite OK Image" format (https://qoiformat.org), an optional
+ * format of the preview section. It decodes several times faster than PNG for about the same
+ * size on screenshots, which are mostly flat colors and runs.
+ *
+ * Pixels are encoded as non premultiplied ARGB and decoded to [BufferedImage.TYPE_INT_ARGB_PRE].
+ */
+object QoiCodec {
+    private val MAGIC = byteArrayOf('q'.code.toByte(), 'o'.code.toByte(), 'i'.code.toByte(), 'f'.code.toByte())
+    private const val HEADER_SIZE = 14
+    private val END_MARKER = byteArrayOf(0, 0, 0, 0, 0, 0, 0, 1)
+
+    private const val OP_INDEX = 0x00
+    private const val OP_DIFF = 0x40
+    private const val OP_LUMA = 0x80
+    private const val OP_RUN = 0xC0
+    private const val OP_RGB = 0xFE
+    private const val OP_RGBA = 0xFF
+    private const val MASK_2 = 0xC0
+    private const val MAX_RUN = 62
+
+    // bounds width x height so a corrupt header cannot allocate an absurd pixel array
+    private const val MAX_PIXELS = 400_000_000
+
+    private const val READ_BUFFER_SIZE = 64 * 1024
+
+    /** Whether [header] starts with the magic of the format. */
+    @JvmStatic
+    fun isQoi(header: ByteArray, length: Int): Boolean {
+        return length >= MAGIC.size && MAGIC.indices.all { header[it] == MAGIC[it] }
+    }
+
+    @JvmStatic
+    fun encode(image: BufferedImage): ByteArray {
+        val width = image.width
+        val height = image.height
+        val pixels = image.getRGB(0, 0, width, height, null, 0, width)
+        val out = ByteArrayOutputStream(HEADER_SIZE + pixels.size + END_MARKER.size)
+        out.write(MAGIC)
+        writeInt(out, width)
+        writeInt(out, height)
+        out.write(if (image.colorModel.hasAlpha()) 4 else 3)
+        // sRGB with linear alpha
+        out.write(0)
+
+        val index = IntArray(64)
+        var previous = 0xFF000000.toInt()
+        var run = 0
+        for (i in pixels.indices) {
+            val pixel = pixels[i]
+            if (pixel == previous) {
+                run++
+                if (run == MAX_RUN || i == pixels.size - 1) {
+                    out.write(OP_RUN or (run - 1))
+                    run = 0
+                }
+                continue
+            }
+            if (run > 0) {
+                out.write(OP_RUN or (run - 1))
+                run = 0
+            }
+            val hash = hash(pixel)
+            if (index[hash] == pixel) {
+                out.write(OP_INDEX or hash)
+            } else {
+                index[hash] = pixel
+                val a = pixel ushr 24
+                val r = pixel shr 16 and 0xFF
+                val g = pixel shr 8 and 0xFF
+                val b = pixel and 0xFF
+                if (a == previous ushr 24) {
+                    val dr = (r - (previous shr 16 and 0xFF)).toByte().toInt()
+                    val dg = (g - (previous shr 8 and 0xFF)).toByte().toInt()
+                    val db = (b - (previous and 0xFF)).toByte().toInt()
+                    val drDg = dr - dg
+                    val dbDg = db - dg
+                    if (dr in -2..1 && dg in -2..1 && db in -2..1) {
+                        out.write(OP_DIFF or ((dr + 2) shl 4) or ((dg + 2) shl 2) or (db + 2))
+                    } else if (drDg in -8..7 && dg in -32..31 && dbDg in -8..7) {
+                        out.write(OP_LUMA or (dg + 32))
+                        out.write(((drDg + 8) shl 4) or (dbDg + 8))
+                    } else {
+                        out.write(OP_RGB)
+                        out.write(r)
+                        out.write(g)
+                        out.write(b)
+                    }
+                } else {
+                    out.write(OP_RGBA)
+                    out.write(r)
+                    out.write(g)
+                    out.write(b)
+                    out.write(a)
+                }
+            }
+            previous = pixel
+        }
+        out.write(END_MARKER)
+        return out.toByteArray()
+    }
+
+    /** Decodes and closes [input], which must start with the magic of the format. */
+    @Throws(IOException::class)
+    @JvmStatic
+    fun decode(input: InputStream): BufferedImage {
+        input.use {
+            val reader = Reader(it)
+            for (b in MAGIC) {
+                if (reader.next() != b.toInt() and 0xFF) {
+                    throw IOException("Not a QOI image")
+                }
+            }
+            val width = reader.nextInt()
+            val height = reader.nextInt()
+            // channels and color space do not change how pixels are decoded
+            reader.next()
+            reader.next()
+            if (width <= 0 || height <= 0 || width.toLong() * height > MAX_PIXELS) {
+                throw IOException("Invalid QOI image size ${width}x$height")
+            }
+
+            val pixels = IntArray(width * height)
+            val index = IntArray(64)
+            var pixel = 0xFF000000.toInt()
+            var opaque = true
+            var i = 0
+            while (i < pixels.size) {
+                val op = reader.next()
+                when {
+                    op == OP_RGB -> {
+                        pixel = (pixel and 0xFF000000.toInt()) or (reader.next() shl 16) or (reader.next() shl 8) or reader.next()
+                    }
+                    op == OP_RGBA -> {
+                        val rgb = (reader.next() shl 16) or (reader.next() shl 8) or reader.next()
+                        pixel = (reader.next() shl 24) or rgb
+                    }
+                    op and MASK_2 == OP_INDEX -> pixel = index[op]
+                    op and MASK_2 == OP_DIFF -> {
+                        pixel = withRgb(
+                            pixel,
+                            (pixel shr 16) + (op shr 4 and 3) - 2,
+                            (pixel shr 8) + (op shr 2 and 3) - 2,
+                            pixel + (op and 3) - 2
+                        )
+                    }
+                    op and MASK_2 == OP_LUMA -> {
+                        val dg = (op and 0x3F) - 32
+                        val next = reader.next()
+                        pixel = withRgb(
+                            pixel,
+                            (pixel shr 16) + dg - 8 + (next shr 4 and 0x0F),
+                            (pixel shr 8) + dg,
+                            pixel + dg - 8 + (next and 0x0F)
+                        )
+                    }
+                    else -> {
+                        val run = minOf((op and 0x3F) + 1, pixels.size - i)
+                        pixels.fill(pixel, i, i + run)
+                        i += run
+                        continue
+                    }
+                }
+                index[hash(pixel)] = pixel
+                if (pixel ushr 24 != 0xFF) {
+                    opaque = false
+                }
+                pixels[i++] = pixel
+            }
+
+            if (!opaque) {
+                premultiply(pixels)
+            }
+            val image = BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE)
+            // setDataElements rather than writing the data buffer, which would stop Java2D from caching the image
+            image.raster.setDataElements(0, 0, width, height, pixels)
+            return image
+        }
+    }
+
+    private fun hash(pixel: Int): Int {
+        val r = pixel shr 16 and 0xFF
+        val g = pixel shr 8 and 0xFF
+        val b = pixel and 0xFF
+        val a = pixel ushr 24
+        return (r * 3 + g * 5 + b * 7 + a * 11) and 63
+    }
+
+    /** Returns [pixel] with the given color channels, each wrapped to 8 bits. */
+    private fun withRgb(pixel: Int, r: Int, g: Int, b: Int): Int {
+        return (pixel and 0xFF000000.toInt()) or ((r and 0xFF) shl 16) or ((g and 0xFF) shl 8) or (b and 0xFF)
+    }
+
+    private fun premultiply(pixels: IntArray) {
+        for (i in pixels.indices) {
+            val pixel = pixels[i]
+            val a = pixel ushr 24
+            if (a == 0xFF) {
+                continue
+            }
+            // rounded as Java2D does when it converts to premultiplied alpha
+            val r = ((pixel shr 16 and 0xFF) * a + 127) / 255
+            val g = ((pixel shr 8 and 0xFF) * a + 127) / 255
+            val b = ((pixel and 0xFF) * a + 127) / 255
+            pixels[i] = (a shl 24) or (r shl 16) or (g shl 8) or b
+        }
+    }
+
+    private fun writeInt(out: ByteArrayOutputStream, value: Int) {
+        out.write(value ushr 24)
+        out.write(value shr 16 and 0xFF)
+        out.write(value shr 8 and 0xFF)
+        out.write(value and 0xFF)
+    }
+
+    /** Reads bytes of a stream through a buffer, the decoder reads them one at a time. */
+    private class Reader(private val mInput: InputStream) {
+        private val mBuffer = ByteArray(READ_BUFFER_SIZE)
+        private var mPosition = 0
+        private var mLimit = 0
+
+        fun next(): Int {
+            if (mPosition == mLimit) {
+                mLimit = mInput.read(mBuffer)
+                mPosition = 0
+                if (mLimit <= 0) {
+                    mLimit = 0
+                    throw EOFException("Truncated QOI image")
+                }
+            }
+            return mBuffer[mPosition++].toInt() and 0xFF
+        }
+
+        fun nextInt(): Int {
+            return (next() shl 24) or (next() shl 16) or (next() shl 8) or next()
+        }
+    }
+}
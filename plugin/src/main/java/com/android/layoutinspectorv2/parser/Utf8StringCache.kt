@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Decodes UTF-8 byte slices into strings, sharing one [String] instance for every occurrence
+ * of the same bytes. Class names, visibility constants, booleans and ids repeat across thousands
+ * of nodes in a dump, so a cache scoped to one capture decodes each of them only once.
+ *
+ * Not thread safe. Threads decoding parts of the same capture each use a cache from
+ * [forThread], which shares its strings with this one.
+ */
+internal class Utf8StringCache private constructor(
+    // the strings of the capture decoded by any of its caches
+    private val mShared: ConcurrentHashMap<String, String>
+) {
+    constructor() : this(ConcurrentHashMap())
+
+    private var mKeys = arrayOfNulls<ByteArray>(INITIAL_CAPACITY)
+    private var mValues = arrayOfNulls<String>(INITIAL_CAPACITY)
+    private var mHashes = IntArray(INITIAL_CAPACITY)
+    private var mSize = 0
+
+    var hits = 0
+        private set
+    var misses = 0
+        private set
+    // misses whose string was already decoded by another cache of the capture
+    var sharedHits = 0
+        private set
+
+    val hitRate: Double
+        get() = if (hits + misses == 0) 0.0 else hits.toDouble() / (hits + misses)
+
+    fun decode(bytes: ByteArray, offset: Int, length: Int): String {
+        if (length == 0) {
+            hits++
+            return ""
+        }
+        if (length > MAX_CACHED_LENGTH) {
+            misses++
+            return newString(bytes, offset, length)
+        }
+
+        var hash = 1
+        for (i in offset until offset + length) {
+            hash = 31 * hash + bytes[i]
+        }
+
+        val mask = mKeys.size - 1
+        var slot = hash and mask
+        while (true) {
+            val key = mKeys[slot] ?: break
+            if (mHashes[slot] == hash && sameBytes(key, bytes, offset, length)) {
+                hits++
+                return mValues[slot]!!
+            }
+            slot = (slot + 1) and mask
+        }
+
+        misses++
+        var value = newString(bytes, offset, length)
+        if (mSize < MAX_ENTRIES) {
+            value = share(value)
+            mKeys[slot] = bytes.copyOfRange(offset, offset + length)
+            mValues[slot] = value
+            mHashes[slot] = hash
+            mSize++
+            if (mSize * 2 > mKeys.size) {
+                rehash()
+            }
+        }
+        return value
+    }
+
+    private fun share(value: String): String {
+        val shared = mShared.putIfAbsent(value, value) ?: return value
+        sharedHits++
+        return shared
+    }
+
+    /** Returns a cache for another thread decoding the same capture, sharing the strings of this one. */
+    fun forThread(): Utf8StringCache {
+        return Utf8StringCache(mShared)
+    }
+
+    private fun sameBytes(key: ByteArray, bytes: ByteArray, offset: Int, length: Int): Boolean {
+        if (key.size != length) {
+            return false
+        }
+        for (i in 0 until length) {
+            if (key[i] != bytes[offset + i]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun rehash() {
+        val keys = mKeys
+        val values = mValues
+        val hashes = mHashes
+        mKeys = arrayOfNulls(keys.size * 2)
+        mValues = arrayOfNulls(keys.size * 2)
+        mHashes = IntArray(keys.size * 2)
+        val mask = mKeys.size - 1
+        for (i in keys.indices) {
+            val key = keys[i] ?: continue
+            var slot = hashes[i] and mask
+            while (mKeys[slot] != null) {
+                slot = (slot + 1) and mask
+            }
+            mKeys[slot] = key
+            mValues[slot] = values[i]
+            mHashes[slot] = hashes[i]
+        }
+    }
+
+    /** Adds the hits and misses of a cache used for another part of the same capture. */
+    fun addStats(other: Utf8StringCache) {
+        hits += other.hits
+        misses += other.misses
+        sharedHits += other.sharedHits
+    }
+
+    override fun toString(): String {
+        return String.format(
+            "hits=%d misses=%d hitRate=%.1f%% shared=%d unique=%d",
+            hits, misses, hitRate * 100, sharedHits, mShared.size
+        )
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 1024
+        // long values are mostly unique text, caching them would only cost memory
+        private const val MAX_CACHED_LENGTH = 128
+        private const val MAX_ENTRIES = 1 shl 16
+
+        @JvmStatic
+        fun newString(bytes: ByteArray, offset: Int, length: Int): String {
+            for (i in offset until offset + length) {
+                if (bytes[i] < 0) {
+                    return String(bytes, offset, length, StandardCharsets.UTF_8)
+                }
+            }
+            // ASCII fast path, a Latin-1 decode is a plain byte copy
+            return String(bytes, offset, length, StandardCharsets.ISO_8859_1)
+        }
+    }
+}
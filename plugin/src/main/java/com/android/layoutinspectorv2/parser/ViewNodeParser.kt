@@ -16,175 +16,137 @@
 
 package com.android.layoutinspectorv2.parser
 
+import com.android.layoutinspectorv2.PropertyProjection
 import com.android.layoutinspectorv2.ProtocolVersion
 import com.android.layoutinspectorv2.model.ViewNode
-import com.google.common.base.Charsets
-import java.io.BufferedReader
-import java.io.ByteArrayInputStream
+import com.intellij.openapi.diagnostic.Logger
 import java.io.IOException
-import java.io.InputStreamReader
-import java.util.ArrayList
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
 import java.util.Collections
-import java.util.Stack
-import java.util.function.BiConsumer
-import java.util.function.BinaryOperator
-import java.util.function.Function
-import java.util.function.Supplier
-import java.util.stream.Collector
 
 object ViewNodeParser {
-    /** Parses the flat string representation of a view node and returns the root node.  */
+    private val LOG = Logger.getInstance(ViewNodeParser::class.java)
+
+    /**
+     * Version of the trees the parsers build from a dump. Bump it when a change to the parsers
+     * alters them, the node tables cached by older versions are then parsed again.
+     */
+    const val TREE_VERSION = 1
+
+    /**
+     * Parses the flat string representation of a view node and returns the root node.
+     * With [lazyProperties], v2 nodes only decode their full property set once it is queried.
+     * With [parallel], large hierarchies are decoded on several cores; the result is the same.
+     */
     @Throws(IOException::class, StringIndexOutOfBoundsException::class)
     @JvmStatic
     @JvmOverloads
     fun parse(
         bytes: ByteArray,
         version: ProtocolVersion = ProtocolVersion.Version1,
-        skippedProperties: Collection<String> = Collections.emptyList()
+        skippedProperties: Collection<String> = Collections.emptyList(),
+        projection: PropertyProjection = PropertyProjection.ALL,
+        lazyProperties: Boolean = false,
+        parallel: Boolean = false
     ): ViewNode? {
         return when (version) {
-            ProtocolVersion.Version1 -> parseV1ViewNode(bytes, skippedProperties)
-            ProtocolVersion.Version2 -> parseV2ViewNode(bytes)
+            ProtocolVersion.Version1 -> parseV1ViewNode(bytes, skippedProperties, projection, parallel)
+            ProtocolVersion.Version2 -> parseV2ViewNode(ByteBuffer.wrap(bytes), projection, lazyProperties, parallel)
         }
     }
 
-    private fun parseV2ViewNode(bytes: ByteArray): ViewNode? {
-        return ViewNodeV2Parser().parse(bytes)
-    }
-
-    private fun parseV1ViewNode(
-        bytes: ByteArray,
-        skippedProperties: Collection<String>
+    /**
+     * Parses the view node in the remaining bytes of [buffer]. v2 dumps are decoded in place, so
+     * a slice of a mapped file is not copied. v1 dumps are copied to the heap first, and so are
+     * direct buffers with [lazyProperties] since the nodes read their properties from them later.
+     */
+    @Throws(IOException::class, StringIndexOutOfBoundsException::class)
+    @JvmStatic
+    @JvmOverloads
+    fun parse(
+        buffer: ByteBuffer,
+        version: ProtocolVersion = ProtocolVersion.Version1,
+        skippedProperties: Collection<String> = Collections.emptyList(),
+        projection: PropertyProjection = PropertyProjection.ALL,
+        lazyProperties: Boolean = false,
+        parallel: Boolean = false
     ): ViewNode? {
-        var root: ViewNode? = null
-        var lastNode: ViewNode? = null
-        var lastWhitespaceCount = Integer.MIN_VALUE
-        val stack = Stack<ViewNode>()
-
-        val input = BufferedReader(
-            InputStreamReader(ByteArrayInputStream(bytes), Charsets.UTF_8)
-        )
-
-        for (line in input.lines().collect(MergeNewLineCollector)) {
-            if ("DONE.".equals(line, ignoreCase = true)) {
-                break
-            }
-            // determine parent through the level of nesting by counting whitespaces
-            var whitespaceCount = 0
-            while (line[whitespaceCount] == ' ') {
-                whitespaceCount++
-            }
-
-            if (lastWhitespaceCount < whitespaceCount) {
-                stack.push(lastNode)
-            } else if (!stack.isEmpty()) {
-                val count = lastWhitespaceCount - whitespaceCount
-                for (i in 0 until count) {
-                    stack.pop()
-                }
-            }
-
-            lastWhitespaceCount = whitespaceCount
-            var parent: ViewNode? = null
-            if (!stack.isEmpty()) {
-                parent = stack.peek()
-            }
-            lastNode = createViewNode(parent, line.trim(), skippedProperties)
-            if (root == null) {
-                root = lastNode
-            }
-        }
-
-        root?.updateNodeDrawn(true)
-        return root
-    }
-
-    private fun createViewNode(
-        parent: ViewNode?,
-        data: String,
-        skippedProperties: Collection<String>
-    ): ViewNode {
-        var data = data
-        var delimIndex = data.indexOf('@')
-        if (delimIndex < 0) {
-            throw IllegalArgumentException("Invalid format for ViewNode, missing @: $data")
-        }
-        var name = data.substring(0, delimIndex)
-        data = data.substring(delimIndex + 1)
-        delimIndex = data.indexOf(' ')
-        val hash = data.substring(0, delimIndex)
-        val node = ViewNode(parent, name, hash)
-        node.index = if (parent == null) 0 else parent!!.children.size
-
-        if (data.length > delimIndex + 1) {
-            loadProperties(node, data.substring(delimIndex + 1), skippedProperties)
-            node.id = node.getProperty("mID", "id")!!.value
-        }
-        node.displayInfo = DisplayInfoFactory.createDisplayInfoFromNode(node)
-        parent?.let {
-            it.children.add(node)
+        return when (version) {
+            ProtocolVersion.Version1 -> parseV1ViewNode(toByteArray(buffer), skippedProperties, projection, parallel)
+            ProtocolVersion.Version2 -> parseV2ViewNode(buffer, projection, lazyProperties, parallel)
         }
-        return node
     }
 
-    private fun loadProperties(
-        node: ViewNode,
-        data: String,
-        skippedProperties: Collection<String>
-    ) {
-        var start = 0
-        var stop: Boolean
-
-        do {
-            val index = data.indexOf('=', start)
-            val fullName = data.substring(start, index)
-
-            val index2 = data.indexOf(',', index + 1)
-            val length = Integer.parseInt(data.substring(index + 1, index2))
-            start = index2 + 1 + length
-
-            if (!skippedProperties.contains(fullName)) {
-                val value = data.substring(index2 + 1, index2 + 1 + length)
-                val property = ViewPropertyParser.parse(fullName, value)
-
-                node.properties.add(property)
-                node.namedProperties[property.fullName] = property
-                node.addPropertyToGroup(property)
-            }
-
-            stop = start >= data.length
-            if (!stop) {
-                start += 1
+    /**
+     * Returns the `name@hash` of the root view of a dump, as [ViewNode.toString] would after
+     * parsing it, or null if the dump has no view. This is much cheaper than [parse], e.g. to
+     * request the preview of the root while the dump is parsed.
+     */
+    @JvmStatic
+    fun peekRoot(bytes: ByteArray, version: ProtocolVersion): String? {
+        return try {
+            when (version) {
+                ProtocolVersion.Version1 -> ViewNodeV1Parser.peekRoot(bytes)
+                ProtocolVersion.Version2 -> ViewNodeV2Parser.peekRoot(ByteBuffer.wrap(bytes))
             }
-        } while (!stop)
-
-        node.properties.sort()
+        } catch (e: ViewNodeV2Decoder.DecoderException) {
+            null
+        } catch (e: IndexOutOfBoundsException) {
+            null
+        } catch (e: BufferUnderflowException) {
+            null
+        }
     }
 
     /**
-     * A custom collector that handles a special case see b/79183623
-     * If a text field has text containing a new line it'll cause the view node output to be split
-     * across multiple lines so the collector processes the file output and merges those back into a
-     * single line so we can correctly create view nodes.
+     * Whether the parsers must keep a property whatever the [PropertyProjection], because the
+     * tree or its display boxes are built from it.
      */
-    private object MergeNewLineCollector : Collector<String, MutableList<String>, List<String>> {
-        override fun characteristics(): Set<Collector.Characteristics> {
-            return setOf(Collector.Characteristics.CONCURRENT)
-        }
+    internal fun isRequiredProperty(category: String?, name: String, fullName: String): Boolean {
+        return category == "meta"
+                || name == "id"
+                || name == "mID"
+                || fullName in DisplayInfoFactory.PROPERTY_NAMES
+                || name in DisplayInfoFactory.PROPERTY_NAMES
+    }
 
-        override fun supplier() = Supplier<MutableList<String>> { ArrayList() }
-        override fun finisher() = Function<MutableList<String>, List<String>> { it.toList() }
-        override fun combiner() =
-            BinaryOperator<MutableList<String>> { t, u -> t.apply { addAll(u) } }
+    private fun parseV2ViewNode(
+        buffer: ByteBuffer,
+        projection: PropertyProjection,
+        lazyProperties: Boolean,
+        parallel: Boolean
+    ): ViewNode? {
+        val threshold = if (parallel) ViewNodeV2Parser.DEFAULT_PARALLEL_CHILD_THRESHOLD else Int.MAX_VALUE
+        val parser = ViewNodeV2Parser(projection, lazyProperties, threshold)
+        val size = buffer.remaining()
+        // Lazy nodes keep the buffer for as long as they live. A mapped file would stay open
+        // (and locked on Windows), and a truncated one would fault when a node is selected.
+        val data = if (lazyProperties && buffer.isDirect) ByteBuffer.wrap(toByteArray(buffer)) else buffer
+        val root = parser.parse(data)
+        LOG.info("Decoded v2 strings of $size bytes: ${parser.stringCache}")
+        return root
+    }
 
-        override fun accumulator() = BiConsumer<MutableList<String>, String> { stringGroup, line ->
-            val newLine = line.trim()
-            // add the original line because we need to keep the spacing to determine hierarchy
-            if (newLine.startsWith("\\n")) {
-                stringGroup[stringGroup.lastIndex] = stringGroup.last() + line
-            } else {
-                stringGroup.add(line)
-            }
+    /** Returns the remaining bytes of [buffer], without a copy when they are its whole backing array. */
+    private fun toByteArray(buffer: ByteBuffer): ByteArray {
+        if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 && buffer.remaining() == buffer.array().size) {
+            return buffer.array()
         }
+        val bytes = ByteArray(buffer.remaining())
+        buffer.duplicate().get(bytes)
+        return bytes
+    }
+
+    private fun parseV1ViewNode(
+        bytes: ByteArray,
+        skippedProperties: Collection<String>,
+        projection: PropertyProjection,
+        parallel: Boolean
+    ): ViewNode? {
+        val parser = ViewNodeV1Parser(skippedProperties, projection, parallel)
+        val root = parser.parse(bytes)
+        LOG.info("Decoded v1 strings of ${bytes.size} bytes: ${parser.stringCache}")
+        return root
     }
 }
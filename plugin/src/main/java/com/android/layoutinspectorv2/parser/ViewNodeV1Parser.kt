@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.PropertyProjection
+import com.android.layoutinspectorv2.model.PropertyKeyTable
+import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.model.ViewProperty
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Parses the text dumps of the v1 protocol straight from their UTF-8 bytes.
+ *
+ * Each line holds one view: its depth is the number of leading spaces, followed by
+ * `name@hash` and the properties as `name=length,value` where the length counts UTF-16 chars.
+ * Lines are scanned in place with offsets, property names and repeated values go through a
+ * [Utf8StringCache], and strings are only built for the values that are kept.
+ *
+ * Parsing runs in three phases. A first pass records where each line starts and ends and which
+ * line is its parent, and creates the nodes. The properties and [DisplayInfo] of every node only
+ * depend on its own line, so with [parallel] they are decoded on the fork-join pool for large
+ * dumps: the properties first, then once all the property names of the capture are known, the
+ * sort order and the [DisplayInfo]. A last pass links the children in order. The result is the
+ * same in both modes.
+ */
+internal class ViewNodeV1Parser(
+    private val skippedProperties: Collection<String>,
+    private val projection: PropertyProjection,
+    private val parallel: Boolean = false
+) {
+    val stringCache = Utf8StringCache()
+    private val mKeyTable = PropertyKeyTable()
+
+    fun parse(bytes: ByteArray): ViewNode? {
+        val lines = LineIndex.build(bytes)
+        if (lines.size == 0) {
+            return null
+        }
+
+        val nodes = arrayOfNulls<ViewNode>(lines.size)
+        for (i in 0 until lines.size) {
+            val parentLine = lines.parents[i]
+            nodes[i] = createViewNode(if (parentLine < 0) null else nodes[parentLine], lines, i)
+        }
+
+        forEachRange(lines.size) { from, to, strings ->
+            loadProperties(nodes, lines, from, to, strings)
+        }
+
+        // all the property names are known now, rank them so the properties sort on ints
+        mKeyTable.rankKeys()
+        val resolver = DisplayInfoResolver.forNames(mKeyTable.keys().mapTo(HashSet()) { it.fullName })
+        forEachRange(lines.size) { from, to, _ ->
+            for (i in from until to) {
+                val node = nodes[i]!!
+                node.properties.sort()
+                node.displayInfo = resolver.createDisplayInfo(node)
+            }
+        }
+
+        for (i in 0 until lines.size) {
+            val node = nodes[i]!!
+            val parent = node.parent ?: continue
+            node.index = parent.children.size
+            parent.children.add(node)
+        }
+
+        val root = nodes[0]!!
+        root.updateNodeDrawn(true)
+        return root
+    }
+
+    private fun createViewNode(parent: ViewNode?, lines: LineIndex, line: Int): ViewNode {
+        val data = lines.data[line]!!
+        val start = lines.starts[line]
+        val end = lines.ends[line]
+        val delimIndex = indexOf(data, AT, start, end)
+        if (delimIndex < 0) {
+            throw IllegalArgumentException(
+                "Invalid format for ViewNode, missing @: ${Utf8StringCache.newString(data, start, end - start)}"
+            )
+        }
+        val name = stringCache.decode(data, start, delimIndex - start)
+        var hashEnd = indexOf(data, SPACE, delimIndex + 1, end)
+        if (hashEnd < 0) {
+            hashEnd = end
+        }
+        val hash = Utf8StringCache.newString(data, delimIndex + 1, hashEnd - delimIndex - 1)
+        // remember where the properties start for the second phase
+        lines.starts[line] = hashEnd + 1
+        return ViewNode(parent, name, hash)
+    }
+
+    private fun loadProperties(
+        nodes: Array<ViewNode?>,
+        lines: LineIndex,
+        from: Int,
+        to: Int,
+        strings: Utf8StringCache
+    ) {
+        for (i in from until to) {
+            val node = nodes[i]!!
+            val data = lines.data[i]!!
+            if (lines.ends[i] > lines.starts[i]) {
+                loadProperties(node, data, lines.starts[i], lines.ends[i], strings)
+                node.id = node.getProperty("mID", "id")!!.value
+            }
+        }
+    }
+
+    /**
+     * Runs [action] over the nodes `[0, size)`, split in chunks on the fork-join pool with
+     * [parallel] and large dumps. Each chunk gets its own string cache, see [Utf8StringCache.forThread].
+     */
+    private fun forEachRange(size: Int, action: (from: Int, to: Int, strings: Utf8StringCache) -> Unit) {
+        if (parallel && size >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(RangeTask(0, size, action))
+        } else {
+            action(0, size, stringCache)
+        }
+    }
+
+    private inner class RangeTask(
+        private val from: Int,
+        private val to: Int,
+        private val action: (from: Int, to: Int, strings: Utf8StringCache) -> Unit
+    ) : RecursiveAction() {
+        override fun compute() {
+            if (to - from <= CHUNK_SIZE) {
+                // the cache is not thread safe, each chunk uses its own over the strings of the capture
+                val strings = stringCache.forThread()
+                action(from, to, strings)
+                synchronized(stringCache) {
+                    stringCache.addStats(strings)
+                }
+                return
+            }
+            val middle = (from + to) ushr 1
+            invokeAll(RangeTask(from, middle, action), RangeTask(middle, to, action))
+        }
+    }
+
+    /**
+     * Where each line of a dump starts and ends once trimmed, and the line of its parent.
+     * Lines merged from continuations point to their own merged buffer.
+     */
+    private class LineIndex(initialCapacity: Int) {
+        var size = 0
+        var data = arrayOfNulls<ByteArray>(initialCapacity)
+        var starts = IntArray(initialCapacity)
+        var ends = IntArray(initialCapacity)
+        var parents = IntArray(initialCapacity)
+
+        fun add(line: ByteArray, start: Int, end: Int, parent: Int) {
+            if (size == starts.size) {
+                val capacity = maxOf(16, size * 2)
+                data = data.copyOf(capacity)
+                starts = starts.copyOf(capacity)
+                ends = ends.copyOf(capacity)
+                parents = parents.copyOf(capacity)
+            }
+            data[size] = line
+            starts[size] = start
+            ends[size] = end
+            parents[size] = parent
+            size++
+        }
+
+        companion object {
+            fun build(bytes: ByteArray): LineIndex {
+                val lines = LineIndex(maxOf(16, bytes.size / 512))
+                var lastLine = -1
+                var lastWhitespaceCount = Integer.MIN_VALUE
+                val stack = ArrayList<Int>()
+
+                var pos = 0
+                while (pos < bytes.size) {
+                    var line = bytes
+                    var lineStart = pos
+                    var lineStop = lineEnd(bytes, pos)
+                    pos = nextLine(bytes, lineStop)
+
+                    // A text containing a new line splits the view across several lines (b/79183623), the
+                    // continuations start with "\n" and are merged back into a single line.
+                    while (pos < bytes.size && isContinuation(bytes, pos)) {
+                        val continuationEnd = lineEnd(bytes, pos)
+                        val merged = ByteArray(lineStop - lineStart + continuationEnd - pos)
+                        System.arraycopy(line, lineStart, merged, 0, lineStop - lineStart)
+                        System.arraycopy(bytes, pos, merged, lineStop - lineStart, continuationEnd - pos)
+                        line = merged
+                        lineStart = 0
+                        lineStop = merged.size
+                        pos = nextLine(bytes, continuationEnd)
+                    }
+
+                    if (isDone(line, lineStart, lineStop)) {
+                        break
+                    }
+
+                    // determine parent through the level of nesting by counting whitespaces
+                    var whitespaceCount = 0
+                    while (lineStart + whitespaceCount < lineStop && line[lineStart + whitespaceCount] == SPACE) {
+                        whitespaceCount++
+                    }
+                    if (lineStart + whitespaceCount == lineStop) {
+                        // blank line
+                        continue
+                    }
+
+                    if (lastWhitespaceCount < whitespaceCount) {
+                        stack.add(lastLine)
+                    } else if (stack.isNotEmpty()) {
+                        val count = lastWhitespaceCount - whitespaceCount
+                        for (i in 0 until count) {
+                            stack.removeAt(stack.size - 1)
+                        }
+                    }
+
+                    lastWhitespaceCount = whitespaceCount
+                    val parent = if (stack.isNotEmpty()) stack[stack.size - 1] else -1
+                    lastLine = lines.size
+                    lines.add(line, trimStart(line, lineStart, lineStop), trimEnd(line, lineStart, lineStop), parent)
+                }
+                return lines
+            }
+        }
+    }
+
+    private fun loadProperties(node: ViewNode, data: ByteArray, from: Int, end: Int, strings: Utf8StringCache) {
+        var start = from
+        var stop: Boolean
+
+        do {
+            val index = indexOf(data, EQUALS, start, end)
+            if (index < 0) {
+                throw StringIndexOutOfBoundsException("Missing '=' in property at $start")
+            }
+            val fullName = strings.decode(data, start, index - start)
+
+            val index2 = indexOf(data, COMMA, index + 1, end)
+            if (index2 < 0) {
+                throw StringIndexOutOfBoundsException("Missing ',' in property $fullName")
+            }
+            val length = parseInt(data, index + 1, index2)
+            val valueEnd = advanceChars(data, index2 + 1, end, length)
+            start = valueEnd
+
+            if (!skippedProperties.contains(fullName) && (projection.isIdentity || isProjected(fullName))) {
+                val value = strings.decode(data, index2 + 1, valueEnd - index2 - 1)
+                val property = ViewProperty(mKeyTable.intern(fullName), value)
+
+                node.properties.add(property)
+                node.namedProperties[property.fullName] = property
+                node.addPropertyToGroup(property)
+            }
+
+            stop = start >= end
+            if (!stop) {
+                start += 1
+            }
+        } while (!stop)
+    }
+
+    private fun isProjected(fullName: String): Boolean {
+        val key = mKeyTable.intern(fullName)
+        return ViewNodeParser.isRequiredProperty(key.category, key.name, fullName)
+                || projection.accepts(key.category, key.name, fullName)
+    }
+
+    companion object {
+        // below this many lines, splitting the work costs more than it saves
+        private const val PARALLEL_THRESHOLD = 2000
+        private const val CHUNK_SIZE = 256
+
+        private const val SPACE = ' '.code.toByte()
+        private const val AT = '@'.code.toByte()
+        private const val EQUALS = '='.code.toByte()
+        private const val COMMA = ','.code.toByte()
+        private const val CR = '\r'.code.toByte()
+        private const val LF = '\n'.code.toByte()
+        private const val BACKSLASH = '\\'.code.toByte()
+        private val DONE = "DONE.".toByteArray()
+
+        /**
+         * Returns the `name@hash` of the root view of [bytes], the first line of the dump, or null
+         * if there is none. Nothing past that line is read.
+         */
+        @JvmStatic
+        fun peekRoot(bytes: ByteArray): String? {
+            var pos = 0
+            while (pos < bytes.size) {
+                val end = lineEnd(bytes, pos)
+                if (isDone(bytes, pos, end)) {
+                    return null
+                }
+                var start = pos
+                while (start < end && bytes[start] == SPACE) {
+                    start++
+                }
+                if (start < end) {
+                    val delimIndex = indexOf(bytes, AT, start, end)
+                    if (delimIndex < 0) {
+                        return null
+                    }
+                    var hashEnd = indexOf(bytes, SPACE, delimIndex + 1, end)
+                    if (hashEnd < 0) {
+                        hashEnd = end
+                    }
+                    return Utf8StringCache.newString(bytes, start, hashEnd - start)
+                }
+                pos = nextLine(bytes, end)
+            }
+            return null
+        }
+
+        /** Position of the line terminator of the line starting at [pos], or the end of the data. */
+        @JvmStatic
+        fun lineEnd(bytes: ByteArray, pos: Int): Int {
+            var i = pos
+            while (i < bytes.size && bytes[i] != LF && bytes[i] != CR) {
+                i++
+            }
+            return i
+        }
+
+        /** Start of the line following the terminator at [end], handling \n, \r and \r\n. */
+        @JvmStatic
+        fun nextLine(bytes: ByteArray, end: Int): Int {
+            if (end < bytes.size && bytes[end] == CR) {
+                return if (end + 1 < bytes.size && bytes[end + 1] == LF) end + 2 else end + 1
+            }
+            return end + 1
+        }
+
+        /** Whether the line starting at [pos] continues the previous one, i.e. trimmed it starts with "\n". */
+        @JvmStatic
+        fun isContinuation(bytes: ByteArray, pos: Int): Boolean {
+            val end = lineEnd(bytes, pos)
+            val i = trimStart(bytes, pos, end)
+            return i + 1 < end && bytes[i] == BACKSLASH && bytes[i + 1] == 'n'.code.toByte()
+        }
+
+        private fun isDone(data: ByteArray, start: Int, end: Int): Boolean {
+            if (end - start != DONE.size) {
+                return false
+            }
+            for (i in DONE.indices) {
+                if (Character.toUpperCase(data[start + i].toInt()) != DONE[i].toInt()) {
+                    return false
+                }
+            }
+            return true
+        }
+
+        @JvmStatic
+        fun trimStart(data: ByteArray, start: Int, end: Int): Int {
+            var i = start
+            while (i < end && data[i] in 0..SPACE) {
+                i++
+            }
+            return i
+        }
+
+        @JvmStatic
+        fun trimEnd(data: ByteArray, start: Int, end: Int): Int {
+            var i = end
+            while (i > start && data[i - 1] in 0..SPACE) {
+                i--
+            }
+            return i
+        }
+
+        private fun indexOf(data: ByteArray, b: Byte, start: Int, end: Int): Int {
+            for (i in start until end) {
+                if (data[i] == b) {
+                    return i
+                }
+            }
+            return -1
+        }
+
+        private fun parseInt(data: ByteArray, start: Int, end: Int): Int {
+            var i = start
+            var negative = false
+            if (i < end && (data[i] == '-'.code.toByte() || data[i] == '+'.code.toByte())) {
+                negative = data[i] == '-'.code.toByte()
+                i++
+            }
+            if (i == end) {
+                throw NumberFormatException("For input string: \"${Utf8StringCache.newString(data, start, end - start)}\"")
+            }
+            var result = 0
+            while (i < end) {
+                val digit = data[i] - '0'.code.toByte()
+                if (digit < 0 || digit > 9) {
+                    throw NumberFormatException("For input string: \"${Utf8StringCache.newString(data, start, end - start)}\"")
+                }
+                result = result * 10 + digit
+                i++
+            }
+            return if (negative) -result else result
+        }
+
+        /**
+         * Returns the position just past [chars] UTF-16 chars of UTF-8 text starting at [start].
+         * Lengths in v1 dumps are String lengths, a code point outside the BMP counts as two.
+         */
+        @JvmStatic
+        fun advanceChars(data: ByteArray, start: Int, end: Int, chars: Int): Int {
+            var i = start
+            var remaining = chars
+            while (remaining > 0 && i < end) {
+                val b = data[i].toInt() and 0xFF
+                when {
+                    b < 0x80 -> {
+                        i += 1
+                        remaining -= 1
+                    }
+                    b >= 0xF0 -> {
+                        i += 4
+                        remaining -= 2
+                    }
+                    b >= 0xE0 -> {
+                        i += 3
+                        remaining -= 1
+                    }
+                    b >= 0xC0 -> {
+                        i += 2
+                        remaining -= 1
+                    }
+                    else -> {
+                        // stray continuation byte, decoded as a replacement char
+                        i += 1
+                        remaining -= 1
+                    }
+                }
+            }
+            return minOf(i, end)
+        }
+    }
+}
@@ -17,20 +17,70 @@
 package com.android.layoutinspectorv2.parser
 
 import java.nio.ByteBuffer
-import java.nio.charset.Charset
 import java.util.HashMap
 
 /**
  * Decodes view hierarchy v2 protocol created by ViewHierarchyEncoder in Android framework.
  */
-internal class ViewNodeV2Decoder(private val mBuf: ByteBuffer) {
+internal class ViewNodeV2Decoder(
+    private val mBuf: ByteBuffer,
+    val stringCache: Utf8StringCache = Utf8StringCache()
+) {
+    // scratch space for strings when the buffer is not backed by an accessible array
+    private var mScratch = ByteArray(0)
+
+    var position: Int
+        get() = mBuf.position()
+        set(value) {
+            mBuf.position(value)
+        }
+
     fun hasRemaining(): Boolean {
         return mBuf.hasRemaining()
     }
 
     fun readObject(): Any {
+        return readValue(nextToken())
+    }
+
+    /**
+     * Reads the signature of the next value. The payload must then be consumed with the
+     * matching typed reader, [readValue] or [skipValue].
+     */
+    fun nextToken(): Byte {
+        return mBuf.get()
+    }
+
+    /**
+     * Reads the key of the next map entry, or [SIG_END_MAP] once the map is exhausted.
+     */
+    fun readKey(): Short {
         val sig = mBuf.get()
+        if (sig != SIG_SHORT) {
+            throw DecoderException(
+                sig,
+                mBuf.position() - 1
+            )
+        }
+        return mBuf.short
+    }
+
+    fun readBoolean(): Boolean = mBuf.get().toInt() != 0
+
+    fun readByte(): Byte = mBuf.get()
+
+    fun readShort(): Short = mBuf.short
+
+    fun readInt(): Int = mBuf.int
+
+    fun readLong(): Long = mBuf.long
+
+    fun readFloat(): Float = mBuf.float
+
+    fun readDouble(): Double = mBuf.double
 
+    /** Reads the payload of a value whose signature has already been consumed. */
+    fun readValue(sig: Byte): Any {
         return when (sig) {
             SIG_BOOLEAN -> if (mBuf.get().toInt() == 0) java.lang.Boolean.FALSE else java.lang.Boolean.TRUE
             SIG_BYTE -> mBuf.get()
@@ -48,11 +98,65 @@ internal class ViewNodeV2Decoder(private val mBuf: ByteBuffer) {
         }
     }
 
-    private fun readString(): String {
+    /** Skips the payload of a value whose signature has already been consumed. */
+    fun skipValue(sig: Byte) {
+        when (sig) {
+            SIG_BOOLEAN, SIG_BYTE -> mBuf.position(mBuf.position() + 1)
+            SIG_SHORT -> mBuf.position(mBuf.position() + 2)
+            SIG_INT, SIG_FLOAT -> mBuf.position(mBuf.position() + 4)
+            SIG_LONG, SIG_DOUBLE -> mBuf.position(mBuf.position() + 8)
+            SIG_STRING -> {
+                val len = mBuf.short.toInt()
+                mBuf.position(mBuf.position() + len)
+            }
+            SIG_MAP -> skipMap()
+            else -> throw DecoderException(
+                sig,
+                mBuf.position() - 1
+            )
+        }
+    }
+
+    /** Skips the entries of a map whose [SIG_MAP] signature has already been consumed. */
+    fun skipMap() {
+        while (readKey() != SIG_END_MAP) {
+            skipValue(nextToken())
+        }
+    }
+
+    /**
+     * Walks the top level objects of the stream without decoding them, and returns the
+     * positions (just past [SIG_MAP]) of the first and the last top level map. Returns null
+     * if the stream contains no map.
+     */
+    fun scanTopLevelMaps(): Pair<Int, Int>? {
+        var first = -1
+        var last = -1
+        while (mBuf.hasRemaining()) {
+            val sig = nextToken()
+            if (sig == SIG_MAP) {
+                if (first < 0) {
+                    first = mBuf.position()
+                }
+                last = mBuf.position()
+            }
+            skipValue(sig)
+        }
+        return if (first < 0) null else Pair(first, last)
+    }
+
+    fun readString(): String {
         val len = mBuf.short.toInt()
-        val b = ByteArray(len)
-        mBuf.get(b, 0, len)
-        return String(b, Charset.forName("utf-8"))
+        if (mBuf.hasArray()) {
+            val start = mBuf.arrayOffset() + mBuf.position()
+            mBuf.position(mBuf.position() + len)
+            return stringCache.decode(mBuf.array(), start, len)
+        }
+        if (mScratch.size < len) {
+            mScratch = ByteArray(maxOf(len, mScratch.size * 2, 256))
+        }
+        mBuf.get(mScratch, 0, len)
+        return stringCache.decode(mScratch, 0, len)
     }
 
     private fun readMap(): Map<Short, Any> {
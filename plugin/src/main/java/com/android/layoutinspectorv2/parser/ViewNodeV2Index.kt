@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import java.util.Arrays
+
+/**
+ * Byte offsets of the view maps of a v2 stream, recorded in stream order while the tree is
+ * built. A single view can then be decoded again later, jumping over its children instead of
+ * walking their bytes.
+ */
+internal class ViewNodeV2Index {
+    private var mStarts = IntArray(64)
+    private var mEnds = IntArray(64)
+
+    var size = 0
+        private set
+
+    /** Records a view map starting at [start] and returns its slot. */
+    fun begin(start: Int): Int {
+        if (size == mStarts.size) {
+            mStarts = mStarts.copyOf(size * 2)
+            mEnds = mEnds.copyOf(size * 2)
+        }
+        mStarts[size] = start
+        return size++
+    }
+
+    fun end(slot: Int, end: Int) {
+        mEnds[slot] = end
+    }
+
+    /**
+     * Appends the maps recorded by [other], which must all start after the ones of this index.
+     * Subtrees built separately are merged back in stream order this way.
+     */
+    fun addAll(other: ViewNodeV2Index) {
+        if (size + other.size > mStarts.size) {
+            val capacity = maxOf(size + other.size, size * 2)
+            mStarts = mStarts.copyOf(capacity)
+            mEnds = mEnds.copyOf(capacity)
+        }
+        System.arraycopy(other.mStarts, 0, mStarts, size, other.size)
+        System.arraycopy(other.mEnds, 0, mEnds, size, other.size)
+        size += other.size
+    }
+
+    /** Returns the position just past the view map that starts at [start]. */
+    fun endOf(start: Int): Int {
+        // maps are recorded in pre-order, so the starts are sorted
+        val slot = Arrays.binarySearch(mStarts, 0, size, start)
+        if (slot < 0) {
+            throw ViewNodeV2Decoder.DecoderException("No view map indexed at position $start")
+        }
+        return mEnds[slot]
+    }
+}
@@ -16,180 +16,533 @@
 
 package com.android.layoutinspectorv2.parser
 
+import com.android.layoutinspectorv2.PropertyProjection
+import com.android.layoutinspectorv2.model.PropertyKey
+import com.android.layoutinspectorv2.model.PropertyKeyTable
 import com.android.layoutinspectorv2.model.ViewNode
 import com.android.layoutinspectorv2.model.ViewProperty
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_BOOLEAN
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_BYTE
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_DOUBLE
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_END_MAP
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_FLOAT
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_INT
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_LONG
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_MAP
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_SHORT
+import com.android.layoutinspectorv2.parser.ViewNodeV2Decoder.Companion.SIG_STRING
 import com.google.common.base.Verify.verify
 import com.google.common.collect.Lists
 import com.google.common.collect.Maps
 import java.nio.ByteBuffer
-import java.util.HashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
 
 private const val META_KEY = "meta"
 private const val HASH_KEY = "$META_KEY:__hash__"
 private const val NAME_KEY = "$META_KEY:__name__"
 private const val CHILD_COUNT_KEY = "__childCount__"
 private const val CHILD_KEY = "__child__"
+private const val LAYOUT_PARAMS_KEY = "layoutParams"
+private const val NO_KEY = -1
+private const val CHILDREN_PER_TASK = 64
 
-class ViewNodeV2Parser {
-    private var ids: Map<String, Short>? = null
-    private var mStringTable: Map<Short, Any>? = null
-    private val mViews: MutableList<Map<Short, Any>> = Lists.newArrayListWithExpectedSize(100)
+/**
+ * Builds the [ViewNode] tree of a v2 dump in a single pass over the stream.
+ *
+ * The string table that maps property keys to names is written at the end of the stream, so it
+ * is located first with a skip-scan that does not decode anything. The views are then decoded
+ * straight into [ViewNode]s, keyed by the raw short ids.
+ *
+ * Properties rejected by the [PropertyProjection] are resolved once per string table entry and
+ * then skipped at the byte level, without building their values.
+ *
+ * With [lazyProperties], only the properties the tree and the preview need are decoded up front.
+ * The offset of every view map is kept in a [ViewNodeV2Index] and the rest of the properties of
+ * a node are decoded from there the first time they are queried.
+ *
+ * The children of views with at least [parallelChildThreshold] children are built on the
+ * fork-join pool: their maps are located with a skip-scan, then decoded in ranges, each with its
+ * own decoder. They are added back in stream order. Use one parser per dump.
+ */
+class ViewNodeV2Parser(
+    private val projection: PropertyProjection = PropertyProjection.ALL,
+    private val lazyProperties: Boolean = false,
+    private val parallelChildThreshold: Int = Int.MAX_VALUE
+) {
+    private var mData: ByteBuffer = ByteBuffer.allocate(0)
+    private var mStringTable: Array<String?> = emptyArray()
+    private var mKeyTable = PropertyKeyTable()
+    // property key of each string table entry
+    private var mKeys: Array<PropertyKey?> = emptyArray()
+    private var mLayoutParamsClassKey: PropertyKey? = null
+    // keys of the margins 101..106 of the layout params
+    private var mMarginKeys: Array<PropertyKey?> = emptyArray()
+    private var mDisplayInfoResolver = DisplayInfoResolver.ALL_ALIASES
+    // index of the child for "meta:__child__N" keys, NO_KEY for any other key
+    private var mChildIndices: IntArray = IntArray(0)
+    // keys rejected by the projection
+    private var mSkippedKeys: BooleanArray = BooleanArray(0)
+    // keys only decoded once the properties of a node are queried, when lazyProperties is set
+    private var mDeferredKeys: BooleanArray = BooleanArray(0)
+    private var mNameKey = NO_KEY
+    private var mHashKey = NO_KEY
+    private var mLayoutParamsKey = NO_KEY
+    private val mIndex = ViewNodeV2Index()
+
+    /** Strings decoded by the last [parse], shared between all the nodes of the capture. */
+    internal var stringCache = Utf8StringCache()
+        private set
 
     fun parse(data: ByteArray): ViewNode? {
-        val d = ViewNodeV2Decoder(ByteBuffer.wrap(data))
+        return parse(ByteBuffer.wrap(data))
+    }
 
-        while (d.hasRemaining()) {
-            val o = d.readObject()
-            if (o is Map<*, *>) {
-                mViews.add(o as Map<Short, Any>)
-            }
-        }
+    /**
+     * Parses the remaining bytes of [data] without copying them. Nodes with lazy properties keep
+     * a reference to the buffer.
+     */
+    fun parse(data: ByteBuffer): ViewNode? {
+        stringCache = Utf8StringCache()
+        mData = data.slice()
+        val d = ViewNodeV2Decoder(mData.duplicate(), stringCache)
 
-        if (mViews.isEmpty()) {
+        val (rootPosition, tablePosition) = d.scanTopLevelMaps() ?: return null
+        // the last one is the property map
+        if (rootPosition == tablePosition) {
             return null
         }
+        d.position = tablePosition
+        loadStringTable(d)
 
-        // the last one is the property map
-        mStringTable = mViews.removeAt(mViews.size - 1)
-        ids = reverse(mStringTable!!)
-
-        val rootMap = mViews[0]
-        val root = createViewNode(rootMap)
+        d.position = rootPosition
+        val root = createViewNode(d, null, mIndex)
         root.updateNodeDrawn(true)
         return root
     }
 
-    private fun createViewNode(
-        propMap: Map<Short, Any>,
-        parent: ViewNode? = null
-    ): ViewNode {
-        // create ViewNode
-        val hashProperty = getProperty(propMap, HASH_KEY)
-        var hash = ""
-        if (hashProperty is Int) {
-            hash = Integer.toHexString(hashProperty)
+    private fun loadStringTable(d: ViewNodeV2Decoder) {
+        var table = arrayOfNulls<String>(256)
+        while (true) {
+            val key = d.readKey()
+            if (key == SIG_END_MAP) {
+                break
+            }
+            val sig = d.nextToken()
+            if (sig != SIG_STRING) {
+                d.skipValue(sig)
+                continue
+            }
+            val index = keyIndex(key)
+            if (index >= table.size) {
+                table = table.copyOf(maxOf(index + 1, table.size * 2))
+            }
+            table[index] = d.readString()
         }
-        val node = ViewNode(parent, getStringProperty(propMap, NAME_KEY), hash)
-        loadProperties(node, propMap)
-        node.displayInfo = DisplayInfoFactory.createDisplayInfoFromNode(node)
-        return node
-    }
-
-    private fun getProperty(props: Map<Short, Any>, key: String): Any? {
-        return props[ids!![key]]
-    }
 
-    private fun reverse(m: Map<Short, Any>): Map<String, Short> {
-        val r = HashMap<String, Short>(m.size)
-
-        for ((key, value) in m) {
-            r[value as String] = key
+        mStringTable = table
+        mKeyTable = PropertyKeyTable()
+        mKeys = arrayOfNulls(table.size)
+        mChildIndices = IntArray(table.size) { NO_KEY }
+        mSkippedKeys = BooleanArray(table.size)
+        mDeferredKeys = BooleanArray(table.size)
+        for ((index, name) in table.withIndex()) {
+            when {
+                name == null -> {}
+                name == NAME_KEY -> {
+                    mNameKey = index
+                    mKeys[index] = mKeyTable.intern(name)
+                }
+                name == HASH_KEY -> {
+                    mHashKey = index
+                    mKeys[index] = mKeyTable.intern(name)
+                }
+                name == LAYOUT_PARAMS_KEY -> {
+                    mLayoutParamsKey = index
+                    mSkippedKeys[index] = !projection.accepts(LAYOUT_PARAMS_KEY, name, name)
+                    mDeferredKeys[index] = true
+                }
+                name.startsWith("$META_KEY:$CHILD_KEY") -> mChildIndices[index] = getChildIndex(name)
+                else -> {
+                    val key = mKeyTable.intern(name)
+                    mKeys[index] = key
+                    val required = ViewNodeParser.isRequiredProperty(key.category, key.name, name)
+                    mSkippedKeys[index] = !required && !projection.accepts(key.category, key.name, name)
+                    mDeferredKeys[index] = !required
+                }
+            }
         }
 
-        return r
+        mLayoutParamsClassKey = mKeyTable.create("class", "class", LAYOUT_PARAMS_KEY)
+        mMarginKeys = Array(106 - 101 + 1) { i ->
+            table.getOrNull(101 + i)?.let { mKeyTable.create(it, it, LAYOUT_PARAMS_KEY) }
+        }
+        mKeyTable.rankKeys()
+        // nodes are keyed by short names
+        mDisplayInfoResolver = DisplayInfoResolver.forNames(mKeyTable.keys().mapTo(HashSet()) { it.name })
     }
 
-    private fun getPropertyKey(name: String): Short? {
-        return ids!![name]
+    private fun keyIndex(key: Short): Int {
+        return key.toInt() and 0xFFFF
     }
 
-    private fun getPropertyName(key: Short): String? {
-        val v = mStringTable!![key]
-        return v as? String
+    private fun getPropertyName(key: Int): String {
+        return mStringTable.getOrNull(key)
+            ?: throw ViewNodeV2Decoder.DecoderException("Unknown property key $key")
     }
 
-    private fun getStringProperty(view: Map<Short, Any>, key: String): String {
-        val v = view[getPropertyKey(key)]
-        if (v is String) {
-            return v
-        }
-        return ""
+    private fun getPropertyKey(key: Int): PropertyKey {
+        return mKeys.getOrNull(key)
+            ?: throw ViewNodeV2Decoder.DecoderException("Unknown property key $key")
     }
 
     private fun getChildIndex(name: String): Int {
         return name.substring(name.indexOf(CHILD_KEY) + 9).toInt()
     }
 
-    private fun loadProperties(node: ViewNode, viewProperties: Map<Short, Any>) {
+    /**
+     * Decodes the view map at the current position, whose [SIG_MAP] signature has already been
+     * consumed, together with all of its children. The view maps are recorded in [index].
+     */
+    private fun createViewNode(d: ViewNodeV2Decoder, parent: ViewNode?, index: ViewNodeV2Index): ViewNode {
+        val start = d.position
+        val slot = if (lazyProperties) index.begin(start) else NO_KEY
+        var name = ""
+        var hash = ""
+        // The encoder always writes the name and hash first, so the node can be created as soon
+        // as the first child shows up.
+        var node: ViewNode? = null
         val namedProperties: MutableMap<String, ViewProperty> = Maps.newHashMap()
         val properties: MutableList<ViewProperty> = Lists.newArrayList()
-        val childrenProps: MutableMap<String, Any> = Maps.newHashMap()
+        val children: MutableList<Pair<Int, ViewNode>> = Lists.newArrayList()
+        // child index and position of the children built in parallel
+        var pendingChildren: MutableList<Pair<Int, Int>>? = null
 
-        for (p in viewProperties.entries) {
-            val fullName = getPropertyName(p.key)!!
-            val value = p.value
-            if (fullName == "layoutParams") {
-                fixLayoutParamsProperties(p, properties, namedProperties)
+        while (true) {
+            val rawKey = d.readKey()
+            if (rawKey == SIG_END_MAP) {
+                break
+            }
+            val key = keyIndex(rawKey)
+            val sig = d.nextToken()
+
+            val childIndex = mChildIndices.getOrElse(key) { NO_KEY }
+            if (childIndex != NO_KEY) {
+                if (sig != SIG_MAP) {
+                    throw ViewNodeV2Decoder.DecoderException("Expected a map for child ${getPropertyName(key)}")
+                }
+                val current = node ?: ViewNode(parent, name, hash).also {
+                    node = it
+                    // the encoder writes the child count before the children
+                    if (isWide(namedProperties)) {
+                        pendingChildren = Lists.newArrayList()
+                    }
+                }
+                val pending = pendingChildren
+                if (pending != null) {
+                    pending.add(Pair(childIndex, d.position))
+                    d.skipMap()
+                } else {
+                    children.add(Pair(childIndex, createViewNode(d, current, index)))
+                }
                 continue
             }
-            if (fullName.startsWith("$META_KEY:$CHILD_KEY")) {
-                childrenProps[fullName] = value
-            } else {
-                val property = ViewPropertyParser.parse(
-                    fullName,
-                    value.toString()
-                )
-                properties.add(property)
-                namedProperties[property.name] = property
+
+            if (mSkippedKeys.getOrElse(key) { false } || (lazyProperties && mDeferredKeys.getOrElse(key) { false })) {
+                d.skipValue(sig)
+                continue
+            }
+
+            if (key == mNameKey && sig == SIG_STRING) {
+                name = d.readString()
+                addProperty(ViewProperty(getPropertyKey(key), name), properties, namedProperties)
+                continue
             }
+            if (key == mHashKey && sig == SIG_INT) {
+                val hashValue = d.readInt()
+                hash = Integer.toHexString(hashValue)
+                addProperty(ViewProperty.ofInt(getPropertyKey(key), hashValue), properties, namedProperties)
+                continue
+            }
+
+            readProperty(d, key, sig, properties, namedProperties)
+        }
+        if (lazyProperties) {
+            index.end(slot, d.position)
+        }
+
+        val result = node ?: ViewNode(parent, name, hash)
+        pendingChildren?.let { buildChildren(result, it, children, index) }
+        loadProperties(result, properties, namedProperties)
+        addChildren(result, children)
+        result.displayInfo = mDisplayInfoResolver.createDisplayInfo(result)
+        if (lazyProperties) {
+            result.setPropertyLoader(ViewNode.PropertyLoader { loadAllProperties(it, start) })
+        }
+        return result
+    }
+
+    private fun isWide(namedProperties: Map<String, ViewProperty>): Boolean {
+        if (parallelChildThreshold == Int.MAX_VALUE || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            return false
         }
+        val childCount = namedProperties[CHILD_COUNT_KEY]?.getInt(-1) ?: return false
+        return childCount >= parallelChildThreshold
+    }
+
+    private fun buildChildren(
+        parent: ViewNode,
+        pending: List<Pair<Int, Int>>,
+        children: MutableList<Pair<Int, ViewNode>>,
+        index: ViewNodeV2Index
+    ) {
+        val nodes = arrayOfNulls<ViewNode>(pending.size)
+        index.addAll(ForkJoinPool.commonPool().invoke(BuildChildrenTask(parent, pending, nodes, 0, pending.size)))
+        pending.forEachIndexed { i, (childIndex, _) -> children.add(Pair(childIndex, nodes[i]!!)) }
+    }
 
+    /**
+     * Builds the subtrees of the [pending] children in `[from, to)` into [nodes], and returns
+     * the view maps recorded for them in stream order.
+     */
+    private inner class BuildChildrenTask(
+        private val parent: ViewNode,
+        private val pending: List<Pair<Int, Int>>,
+        private val nodes: Array<ViewNode?>,
+        private val from: Int,
+        private val to: Int
+    ) : RecursiveTask<ViewNodeV2Index>() {
+        override fun compute(): ViewNodeV2Index {
+            if (to - from <= CHILDREN_PER_TASK) {
+                // the string cache is not thread safe, each range uses its own over the strings of the capture
+                val strings = stringCache.forThread()
+                val d = ViewNodeV2Decoder(mData.duplicate(), strings)
+                val index = ViewNodeV2Index()
+                for (i in from until to) {
+                    d.position = pending[i].second
+                    nodes[i] = createViewNode(d, parent, index)
+                }
+                synchronized(stringCache) {
+                    stringCache.addStats(strings)
+                }
+                return index
+            }
+            val middle = (from + to) ushr 1
+            val left = BuildChildrenTask(parent, pending, nodes, from, middle)
+            val right = BuildChildrenTask(parent, pending, nodes, middle, to)
+            invokeAll(left, right)
+            val index = left.join()
+            index.addAll(right.join())
+            return index
+        }
+    }
+
+    /**
+     * Decodes again the view map starting at [start] with all of its properties, jumping over
+     * the children with the [ViewNodeV2Index].
+     */
+    private fun loadAllProperties(node: ViewNode, start: Int) {
+        // nodes may be queried from several threads, the string cache is shared between them
+        synchronized(mIndex) {
+            val d = ViewNodeV2Decoder(mData.duplicate(), stringCache)
+            d.position = start
+            val namedProperties: MutableMap<String, ViewProperty> = Maps.newHashMap()
+            val properties: MutableList<ViewProperty> = Lists.newArrayList()
+
+            while (true) {
+                val rawKey = d.readKey()
+                if (rawKey == SIG_END_MAP) {
+                    break
+                }
+                val key = keyIndex(rawKey)
+                val sig = d.nextToken()
+
+                if (mChildIndices.getOrElse(key) { NO_KEY } != NO_KEY) {
+                    d.position = mIndex.endOf(d.position)
+                    continue
+                }
+                if (mSkippedKeys.getOrElse(key) { false }) {
+                    d.skipValue(sig)
+                    continue
+                }
+                readProperty(d, key, sig, properties, namedProperties)
+            }
+
+            node.properties.clear()
+            node.namedProperties.clear()
+            node.groupedProperties.clear()
+            loadProperties(node, properties, namedProperties)
+            // hide meta props
+            node.groupedProperties.remove(META_KEY)
+        }
+    }
+
+    private fun readProperty(
+        d: ViewNodeV2Decoder,
+        key: Int,
+        sig: Byte,
+        properties: MutableList<ViewProperty>,
+        namedProperties: MutableMap<String, ViewProperty>
+    ) {
+        if (key == mLayoutParamsKey) {
+            fixLayoutParamsProperties(d, sig, properties, namedProperties)
+            return
+        }
+        addProperty(readValue(d, getPropertyKey(key), sig), properties, namedProperties)
+    }
+
+    private fun readValue(d: ViewNodeV2Decoder, key: PropertyKey, sig: Byte): ViewProperty {
+        return when (sig) {
+            SIG_BOOLEAN -> ViewProperty.ofBoolean(key, d.readBoolean())
+            SIG_BYTE -> ViewProperty.ofInt(key, d.readByte().toInt())
+            SIG_SHORT -> ViewProperty.ofInt(key, d.readShort().toInt())
+            SIG_INT -> ViewProperty.ofInt(key, d.readInt())
+            SIG_LONG -> ViewProperty.ofLong(key, d.readLong())
+            SIG_FLOAT -> ViewProperty.ofFloat(key, d.readFloat())
+            SIG_DOUBLE -> ViewProperty.ofDouble(key, d.readDouble())
+            SIG_STRING -> ViewProperty(key, d.readString())
+            // nested objects other than layout params are rare, keep their generic form
+            else -> ViewProperty(key, d.readValue(sig).toString())
+        }
+    }
+
+    private fun addProperty(
+        property: ViewProperty,
+        properties: MutableList<ViewProperty>,
+        namedProperties: MutableMap<String, ViewProperty>
+    ) {
+        properties.add(property)
+        namedProperties[property.name] = property
+    }
+
+    private fun loadProperties(
+        node: ViewNode,
+        properties: List<ViewProperty>,
+        namedProperties: Map<String, ViewProperty>
+    ) {
         node.namedProperties.putAll(namedProperties)
         node.properties.addAll(properties)
         node.properties.map { node.addPropertyToGroup(it) }
         node.namedProperties["id"]?.let {
             node.id = it.value
         }
-
-        // hide meta props
-        val metaProps = node.groupedProperties.remove(META_KEY)
-        addChildren(node, metaProps!!, childrenProps)
     }
 
     /**
      * create a new category named "layoutParams" and put margin into it.
      */
     private fun fixLayoutParamsProperties(
-        p: Map.Entry<Short, Any>,
+        d: ViewNodeV2Decoder,
+        sig: Byte,
         properties: MutableList<ViewProperty>,
         namedProperties: MutableMap<String, ViewProperty>
     ) {
-        val value = p.value
-        val propertyList = ArrayList<ViewProperty>()
-        if (value is Map<*, *>) {
-            val layoutParamsClass = value[3.toShort()]
-            val classProperty = ViewProperty("class", "class", "layoutParams", layoutParamsClass.toString())
-            propertyList.add(classProperty)
-            value.forEach { it
-                if (it.key is Short && it.key as Short in 101.toShort()..106.toShort()) {
-                    val name = getPropertyName(it.key as Short)
-                    val marginValue = it.value
-                    if (name != null && marginValue is Int && marginValue != Int.MIN_VALUE) {
-                        val property = ViewProperty(name, name, "layoutParams", marginValue.toString())
-                        propertyList.add(property)
+        if (sig != SIG_MAP) {
+            d.skipValue(sig)
+            return
+        }
+        var layoutParamsClass: String? = null
+        val margins = ArrayList<ViewProperty>()
+        while (true) {
+            val rawKey = d.readKey()
+            if (rawKey == SIG_END_MAP) {
+                break
+            }
+            val valueSig = d.nextToken()
+            when (rawKey.toInt()) {
+                3 -> layoutParamsClass = d.readValue(valueSig).toString()
+                in 101..106 -> {
+                    val marginKey = mMarginKeys[rawKey - 101]
+                    if (valueSig == SIG_INT) {
+                        val marginValue = d.readInt()
+                        if (marginKey != null && marginValue != Int.MIN_VALUE) {
+                            margins.add(ViewProperty.ofInt(marginKey, marginValue))
+                        }
+                    } else {
+                        d.skipValue(valueSig)
                     }
                 }
+                else -> d.skipValue(valueSig)
             }
         }
-        propertyList.forEach { property->
-            properties.add(property)
-            namedProperties[property.name] = property
-        }
+
+        addProperty(ViewProperty(mLayoutParamsClassKey!!, layoutParamsClass.toString()), properties, namedProperties)
+        margins.forEach { addProperty(it, properties, namedProperties) }
     }
 
     private fun addChildren(
         parent: ViewNode,
-        metaProps: MutableList<ViewProperty>,
-        childrenProps: Map<String, Any>
+        children: MutableList<Pair<Int, ViewNode>>
     ) {
+        // hide meta props
+        val metaProps = parent.groupedProperties.remove(META_KEY) ?: return
         // no children if there is no matching prop
         val childCountProp = metaProps.find { it.name == CHILD_COUNT_KEY } ?: return
-        val childCount = childCountProp.value.toInt()
-        val children = childrenProps.entries.sortedBy { getChildIndex(it.key) }.map { createViewNode(it.value as Map<Short, Any>, parent) }
+        val childCount = if (childCountProp.type == ViewProperty.Type.INT) {
+            childCountProp.getInt(0)
+        } else {
+            childCountProp.value.toInt()
+        }
+        children.sortBy { it.first }
         verify(childCount == children.size, String.format(
             "Expect view node %s to have %d children but instead found %d",
             parent, childCount, children.size
         ))
-        parent.children.addAll(children)
+        children.mapTo(parent.children) { it.second }
+    }
+
+    companion object {
+        /** Child count above which [ViewNodeParser] builds the children of a view in parallel. */
+        const val DEFAULT_PARALLEL_CHILD_THRESHOLD = 500
+
+        /**
+         * Returns the `name@hash` of the root view in the remaining bytes of [data], or null if
+         * there is none. Only the string table and the first entries of the root map are decoded,
+         * the rest of the dump is skipped over.
+         */
+        internal fun peekRoot(data: ByteBuffer): String? {
+            val d = ViewNodeV2Decoder(data.slice(), Utf8StringCache())
+            val (rootPosition, tablePosition) = d.scanTopLevelMaps() ?: return null
+            if (rootPosition == tablePosition) {
+                return null
+            }
+
+            d.position = tablePosition
+            var nameKey: Short? = null
+            var hashKey: Short? = null
+            while (nameKey == null || hashKey == null) {
+                val key = d.readKey()
+                if (key == SIG_END_MAP) {
+                    return null
+                }
+                val sig = d.nextToken()
+                if (sig != SIG_STRING) {
+                    d.skipValue(sig)
+                    continue
+                }
+                when (d.readString()) {
+                    NAME_KEY -> nameKey = key
+                    HASH_KEY -> hashKey = key
+                }
+            }
+
+            // the encoder writes the name and the hash first
+            d.position = rootPosition
+            var name: String? = null
+            var hash: String? = null
+            while (name == null || hash == null) {
+                val key = d.readKey()
+                if (key == SIG_END_MAP) {
+                    return null
+                }
+                val sig = d.nextToken()
+                when {
+                    key == nameKey && sig == SIG_STRING -> name = d.readString()
+                    key == hashKey && sig == SIG_INT -> hash = Integer.toHexString(d.readInt())
+                    else -> d.skipValue(sig)
+                }
+            }
+            return "$name@$hash"
+        }
     }
 }
@@ -16,20 +16,11 @@
 
 package com.android.layoutinspectorv2.parser
 
+import com.android.layoutinspectorv2.model.PropertyKey
 import com.android.layoutinspectorv2.model.ViewProperty
 
 object ViewPropertyParser {
     fun parse(propertyFullName: String, value: String) : ViewProperty {
-        val colonIndex = propertyFullName.indexOf(':')
-        var category: String?
-        var name: String?
-        if (colonIndex != -1) {
-            category = propertyFullName.substring(0, colonIndex)
-            name = propertyFullName.substring(colonIndex + 1)
-        } else {
-            category = null
-            name = propertyFullName
-        }
-        return ViewProperty(propertyFullName, name, category, value)
+        return ViewProperty(PropertyKey.parse(propertyFullName), value)
     }
 }
@@ -21,11 +21,13 @@ import com.android.layoutinspectorv2.LayoutInspectorCaptureOptions;
 import com.android.layoutinspectorv2.LayoutInspectorResult;
 import com.android.layoutinspectorv2.ProtocolVersion;
 import com.android.layoutinspectorv2.model.ClientWindow;
+import com.android.layoutinspectorv2.model.LayoutFileData;
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.idea.stats.AndroidStudioUsageTracker;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.wireless.android.sdk.stats.AndroidStudioEvent;
 import com.google.wireless.android.sdk.stats.LayoutInspectorEvent;
+import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.progress.ProgressIndicator;
@@ -38,39 +40,50 @@ import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class LayoutInspectorCaptureTask extends Task.Backgroundable {
   private static final String TITLE = "Capture view hierarchy";
 
   @NotNull private final Client myClient;
-  @NotNull private final ClientWindow myWindow;
+  // bottom first
+  @NotNull private final List<ClientWindow> myWindows;
 
   private String myError;
   private byte[] myData;
 
   private File file;
+  private VirtualFile myVirtualFile;
 
   public LayoutInspectorCaptureTask(@NotNull Project project, @NotNull Client client, @NotNull ClientWindow window) {
+    this(project, client, Collections.singletonList(window));
+  }
+
+  /** Captures all the {@code windows}, bottom first, in a single capture. */
+  public LayoutInspectorCaptureTask(@NotNull Project project, @NotNull Client client, @NotNull List<ClientWindow> windows) {
     super(project, TITLE);
     myClient = client;
-    myWindow = window;
+    myWindows = windows;
   }
 
   @Override
   public void run(@NotNull ProgressIndicator indicator) {
-    LayoutInspectorCaptureOptions options = new LayoutInspectorCaptureOptions();
-    options.setTitle(myWindow.getDisplayName());
-    ProtocolVersion version =
-      determineProtocolVersion(myClient.getDevice().getVersion().getApiLevel());
-
-    options.setVersion(version);
+    List<LayoutInspectorCaptureOptions> options = new ArrayList<>(myWindows.size());
+    for (ClientWindow window : myWindows) {
+      options.add(createCaptureOptions(myClient, window));
+    }
 
     // Capture view hierarchy
     indicator.setText(TITLE);
     indicator.setIndeterminate(false);
 
     long startTimeMs = System.currentTimeMillis();
-    LayoutInspectorResult result = LayoutInspectorBridge.captureView(myWindow, options);
+    LayoutInspectorResult result = myWindows.size() == 1
+                                   ? LayoutInspectorBridge.captureView(myWindows.get(0), options.get(0))
+                                   : LayoutInspectorBridge.captureWindows(myWindows, options);
     long captureDurationMs = System.currentTimeMillis() - startTimeMs;
     
     if (!result.getError().isEmpty()) {
@@ -80,9 +93,46 @@ public class LayoutInspectorCaptureTask extends Task.Backgroundable {
 
     myData = result.getData();
 
-    // write data to file
-    file = LayoutInspectorFileHelper.saveToFile(myClient, this.myProject, myData);
+    LayoutFileData snapshot = result.getSnapshot();
+    if (snapshot == null) {
+      // write data to file
+      file = LayoutInspectorFileHelper.saveToFile(myClient, this.myProject, myData);
+    }
+    else {
+      // the editor shows the snapshot while the data is written in the background
+      file = LayoutInspectorFileHelper.getCaptureFile(myClient, this.myProject);
+      if (file == null) {
+        return;
+      }
+      try {
+        // the VFS only finds files that exist
+        file.createNewFile();
+      }
+      catch (IOException e) {
+        myError = "Cannot save file: " + e.getLocalizedMessage();
+        return;
+      }
+      // the windows of a multi-window capture are not refreshed
+      ClientWindow window = myWindows.size() == 1 ? myWindows.get(0) : null;
+      LayoutSnapshotRegistry.getInstance(myProject)
+        .register(file, myData, new LayoutSnapshotRegistry.Snapshot(snapshot, myClient, window));
+    }
+    if (file != null) {
+      // refreshing on the EDT would block it on the file system
+      myVirtualFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file);
+    }
+  }
+
+  /** Returns the options to capture {@code window} of {@code client} with. */
+  @NotNull
+  static LayoutInspectorCaptureOptions createCaptureOptions(@NotNull Client client, @NotNull ClientWindow window) {
+    LayoutInspectorCaptureOptions options = new LayoutInspectorCaptureOptions();
+    options.setTitle(window.getDisplayName());
+    ProtocolVersion version =
+      determineProtocolVersion(client.getDevice().getVersion().getApiLevel());
 
+    options.setVersion(version);
+    return options;
   }
 
   @VisibleForTesting
@@ -97,12 +147,18 @@ public class LayoutInspectorCaptureTask extends Task.Backgroundable {
       return;
     }
 
-    if (file == null) {
+    if (file == null || myVirtualFile == null) {
+      if (file != null) {
+        LayoutSnapshotRegistry.getInstance(myProject).discard(file);
+      }
       Messages.showErrorDialog("Cannot save file", TITLE);
       return;
     }
 
-    VirtualFile virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file);
-    FileEditorManager.getInstance(myProject).openEditor(new OpenFileDescriptor(myProject, virtualFile), true);
+    List<FileEditor> editors =
+      FileEditorManager.getInstance(myProject).openEditor(new OpenFileDescriptor(myProject, myVirtualFile), true);
+    if (editors.isEmpty()) {
+      LayoutSnapshotRegistry.getInstance(myProject).discard(file);
+    }
   }
 }
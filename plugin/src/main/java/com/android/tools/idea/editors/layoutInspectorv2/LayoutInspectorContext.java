@@ -20,9 +20,12 @@ import com.android.ddmlib.AndroidDebugBridge;
 import com.android.ddmlib.Client;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.internal.jdwp.chunkhandler.HandleViewDebug;
+import com.android.layoutinspectorv2.LayoutInspectorBridge;
 import com.android.layoutinspectorv2.model.ClientWindow;
 import com.android.layoutinspectorv2.model.LayoutFileData;
+import com.android.layoutinspectorv2.model.SubtreePreview;
 import com.android.layoutinspectorv2.model.ViewNode;
+import com.android.layoutinspectorv2.model.ViewNodeMatcher;
 import com.android.layoutinspectorv2.model.ViewProperty;
 import com.android.tools.adtui.workbench.ToolWindowDefinition;
 import com.android.tools.analytics.UsageTracker;
@@ -42,12 +45,16 @@ import com.google.wireless.android.sdk.stats.LayoutInspectorEvent;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.DataProvider;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.JBCheckboxMenuItem;
 import com.intellij.openapi.ui.JBPopupMenu;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.ui.SpeedSearchComparator;
 import com.intellij.ui.TableSpeedSearch;
 
@@ -60,18 +67,25 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import javax.imageio.ImageIO;
 import javax.swing.JMenuItem;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 
 public class LayoutInspectorContext implements Disposable, DataProvider, ViewNodeActiveDisplay.ViewNodeActiveDisplayListener,
@@ -82,6 +96,10 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   // Hidden from public usage until we get UX/PM input on displaying display list output.
   private static final boolean DUMP_DISPLAYLIST_ENABLED = Boolean.getBoolean("dump.displaylist.enabled");
 
+  // Loads the subtree previews of the selected view and its children before they are asked for, see prefetchSubtreeImages.
+  private static final boolean PREFETCH_SUBTREE_IMAGES = Boolean.getBoolean("layoutinspectorv2.subtree.prefetch");
+  private static final int MAX_PREFETCHED_IMAGES = 4;
+
   @NotNull
   private LayoutInspectorModel myModel;
 
@@ -103,6 +121,9 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   private final PTableModel myTableModel;
   @NotNull
   private final PTable myPropertiesTable;
+  // the top level items of the table, to find its open groups
+  @NotNull
+  private List<PTableItem> myTableItems = Collections.emptyList();
 
   // Node popup menu
   @NotNull
@@ -114,6 +135,24 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   @NotNull
   private final JMenuItem mySubtreePreviewMenuItem;
 
+  // re-captures the window while live updates are on
+  @Nullable
+  private LiveCapture myLiveCapture;
+  // index in the live capture history of the snapshot shown, -1 for the latest one
+  private int myHistoryIndex = -1;
+  private boolean myRefreshing;
+  // set while a snapshot replaces the tree, see showSnapshot
+  private boolean myShowingSnapshot;
+  private boolean myDisposed;
+
+  @NotNull
+  private final SubtreeImageCache mySubtreeImages = new SubtreeImageCache();
+  // the subtree whose image is loading, if any
+  @Nullable
+  private ViewNode myPendingSubView;
+  // counts the snapshots shown, an image of the subtree of a view is only valid for its snapshot
+  private int myGeneration;
+
   @NotNull
   private static Logger getLogger() {
     return Logger.getInstance(LayoutInspectorContext.class);
@@ -122,8 +161,9 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   public LayoutInspectorContext(@NotNull Project project, @NotNull LayoutFileData layoutParser, @NotNull Disposable parentDisposable) {
     this.project = project;
     ViewNode root = layoutParser.getNode();
+    // the image may still be decoding, see setBufferedImage
     BufferedImage image = layoutParser.getBufferedImage();
-    assert (root != null && image != null);
+    assert root != null;
     myModel = new LayoutInspectorModel(root, image);
 
     myNodeTree = createNodeTree(myModel.getRoot());
@@ -169,7 +209,7 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
     mySubtreePreviewMenuItem.setVisible(false);
     mySubtreePreviewMenuItem.setVisible(true);
     mySubtreePreviewMenuItem.addActionListener(new RenderSubtreePreviewActionListener());
-    mySubtreePreviewMenuItem.setEnabled(myModel.isConnected());
+    mySubtreePreviewMenuItem.setEnabled(canShowSubView());
     myNodePopup.add(mySubtreePreviewMenuItem);
 
     Disposer.register(parentDisposable, this);
@@ -183,6 +223,13 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
     tree.setCellRenderer(new ViewNodeTreeRenderer());
     tree.addTreeSelectionListener(this);
     tree.addTreeHoverListener(this);
+    expandDrawnNodes(tree);
+
+    tree.addMouseListener(new NodeRightClickAdapter());
+    return tree;
+  }
+
+  private static void expandDrawnNodes(@NotNull RollOverTree tree) {
     // Expand visible nodes
     for (int i = 0; i < tree.getRowCount(); i++) {
       TreePath path = tree.getPathForRow(i);
@@ -191,9 +238,6 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
         tree.expandPath(path);
       }
     }
-
-    tree.addMouseListener(new NodeRightClickAdapter());
-    return tree;
   }
 
   @NotNull
@@ -238,13 +282,21 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   public void valueChanged(@NotNull TreeSelectionEvent event) {
     ViewNode selection = (ViewNode)myNodeTree.getLastSelectedPathComponent();
     if (selection != null) {
-      myTableModel.setItems(convertToItems(selection.getGroupedProperties(), new LayoutInspectorEditHandler()));
+      if (!myShowingSnapshot) {
+        setTableItems(convertToItems(selection.getGroupedProperties(), new LayoutInspectorEditHandler()));
+      }
       if (myPreview != null) {
         myPreview.setSelectedNode(selection);
       }
+      prefetchSubtreeImages(selection);
     }
   }
 
+  private void setTableItems(@NotNull List<PTableItem> items) {
+    myTableItems = items;
+    myTableModel.setItems(items);
+  }
+
   @NotNull
   public static List<PTableItem> convertToItems(@NotNull Map<String, List<ViewProperty>> properties, @NotNull EditHandler editHandler) {
     List<PTableItem> items = new ArrayList<>();
@@ -265,7 +317,12 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
 
   @Override
   public void dispose() {
+    myDisposed = true;
     AndroidDebugBridge.removeDeviceChangeListener(this);
+    if (myLiveCapture != null) {
+      myLiveCapture.stop();
+    }
+    mySubtreeImages.dispose();
   }
 
   @Nullable
@@ -279,11 +336,35 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
     return myModel.getRoot();
   }
 
-  @NotNull
+  @Nullable
   public BufferedImage getBufferedImage() {
     return myModel.getBufferedImage();
   }
 
+  /**
+   * Shows a subsampled image of the root until {@link #setBufferedImage} is called with the full one.
+   * Does nothing if the full image is already shown.
+   */
+  public void setSampledPreview(@NotNull BufferedImage sample) {
+    if (myModel.getBufferedImage() != null) return;
+    if (myPreview != null) {
+      myPreview.setPreview(sample, myModel.getRoot());
+    }
+  }
+
+  /**
+   * Sets the image of the root once it has been decoded, for contexts created from the hierarchy alone.
+   * Replaces a sampled preview without resetting the zoom, the selection or the hover.
+   * Does nothing if an image is already shown.
+   */
+  public void setBufferedImage(@NotNull BufferedImage image) {
+    if (myModel.getBufferedImage() != null) return;
+    myModel = myModel.copy(myModel.getRoot(), image, myModel.getClient(), myModel.getWindow());
+    if (myPreview != null) {
+      myPreview.setPreview(image, myModel.getRoot());
+    }
+  }
+
   public void setPreview(@NotNull ViewNodeActiveDisplay preview) {
     myPreview = preview;
   }
@@ -291,7 +372,210 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   public void setSources(@Nullable Client newClient, @Nullable ClientWindow newWindow) {
     myModel = myModel.copy(myModel.getRoot(), myModel.getBufferedImage(), newClient, newWindow);
     myDumpDisplayListMenuItem.setEnabled(myModel.isConnected());
-    mySubtreePreviewMenuItem.setEnabled(myModel.isConnected());
+    mySubtreePreviewMenuItem.setEnabled(canShowSubView());
+    if (myLiveCapture != null && myLiveCapture.getWindow() != newWindow) {
+      myLiveCapture.stop();
+      myLiveCapture = null;
+    }
+  }
+
+  public boolean isConnected() {
+    return myModel.isConnected();
+  }
+
+  public boolean isLiveCaptureRunning() {
+    return myLiveCapture != null && myLiveCapture.isRunning();
+  }
+
+  /** Starts or stops re-capturing the window in the background, see {@link LiveCapture}. */
+  public void setLiveCaptureRunning(boolean running) {
+    if (!running) {
+      if (myLiveCapture != null) {
+        myLiveCapture.stop();
+      }
+      return;
+    }
+    if (!myModel.isConnected()) return;
+    if (myLiveCapture == null) {
+      myLiveCapture = new LiveCapture(this, myModel.getClient(), myModel.getWindow());
+    }
+    myHistoryIndex = -1;
+    myLiveCapture.start();
+  }
+
+  public boolean canRefresh() {
+    return myModel.isConnected() && !myRefreshing && mySubviewList.isEmpty();
+  }
+
+  /** Captures the window again in the background and shows it in place, see {@link #showSnapshot}. */
+  public void refresh() {
+    if (!canRefresh()) return;
+    Client client = myModel.getClient();
+    ClientWindow window = myModel.getWindow();
+    myRefreshing = true;
+    new Task.Backgroundable(project, "Refreshing layout") {
+      @Nullable private LayoutFileData mySnapshot;
+      @Nullable private String myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        try {
+          mySnapshot = LayoutInspectorBridge.captureSnapshot(window, LayoutInspectorCaptureTask.createCaptureOptions(client, window));
+        }
+        catch (IOException e) {
+          myError = e.getMessage();
+        }
+      }
+
+      @Override
+      public void onFinished() {
+        myRefreshing = false;
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myDisposed) return;
+        if (mySnapshot != null) {
+          if (myLiveCapture != null) {
+            // the latest snapshot is the one shown
+            myLiveCapture.getHistory().add(mySnapshot);
+            myHistoryIndex = -1;
+          }
+          showSnapshot(mySnapshot);
+        }
+        else {
+          createNotification("Error refreshing view hierarchy: " + StringUtil.notNullize(myError), NotificationType.ERROR);
+        }
+      }
+    }.queue();
+  }
+
+  /**
+   * Whether {@link #stepSnapshot} can show the snapshot {@code offset} snapshots newer than the one shown, or older for a
+   * negative offset. Only the snapshots kept while live updates ran can be shown, once they are paused.
+   */
+  public boolean canStepSnapshot(int offset) {
+    if (myLiveCapture == null || myLiveCapture.isRunning() || myRefreshing || !mySubviewList.isEmpty()) return false;
+    int index = getShownHistoryIndex() + offset;
+    return index >= 0 && index < myLiveCapture.getHistory().getSize();
+  }
+
+  /** Shows a snapshot kept by the paused live updates in place of the one shown, see {@link #showSnapshot}. */
+  public void stepSnapshot(int offset) {
+    if (!canStepSnapshot(offset)) return;
+    int index = getShownHistoryIndex() + offset;
+    showSnapshot(myLiveCapture.getHistory().get(index));
+    myHistoryIndex = index;
+  }
+
+  private int getShownHistoryIndex() {
+    return myHistoryIndex < 0 ? myLiveCapture.getHistory().getSize() - 1 : myHistoryIndex;
+  }
+
+  /**
+   * Shows a new snapshot of the window in place of the current one, in the same tree, preview and properties table. The
+   * nodes of the snapshot are matched to the current ones with {@link ViewNodeMatcher}, and keep their selection, expanded
+   * rows and forced visibility. The properties table keeps its open groups, and is left alone if the selected view did not
+   * change. Snapshots are not shown while a subview is, the preview would not match the tree.
+   */
+  void showSnapshot(@NotNull LayoutFileData snapshot) {
+    ViewNode root = snapshot.getNode();
+    BufferedImage image = snapshot.getBufferedImage();
+    if (root == null || image == null || !mySubviewList.isEmpty()) return;
+
+    ViewNode oldRoot = myModel.getRoot();
+    Map<ViewNode, ViewNode> matches = ViewNodeMatcher.match(oldRoot, root);
+    Map<ViewNode, ViewNode> newNodes = new IdentityHashMap<>(matches.size());
+    boolean forced = false;
+    for (Map.Entry<ViewNode, ViewNode> match : matches.entrySet()) {
+      ViewNode oldNode = match.getValue();
+      newNodes.put(oldNode, match.getKey());
+      if (oldNode.getForcedState() != ViewNode.ForcedState.NONE) {
+        match.getKey().setForcedState(oldNode.getForcedState());
+        forced = true;
+      }
+    }
+    if (forced) {
+      root.updateNodeDrawn();
+    }
+
+    Set<ViewNode> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+    Enumeration<TreePath> expandedPaths = myNodeTree.getExpandedDescendants(new TreePath(oldRoot));
+    while (expandedPaths != null && expandedPaths.hasMoreElements()) {
+      expanded.add((ViewNode)expandedPaths.nextElement().getLastPathComponent());
+    }
+    ViewNode oldSelection = (ViewNode)myNodeTree.getLastSelectedPathComponent();
+    ViewNode selection = null;
+    for (ViewNode node = oldSelection; node != null && selection == null; node = node.getParent()) {
+      // a removed view selects its closest ancestor still there
+      selection = newNodes.get(node);
+    }
+
+    myModel = myModel.copy(root, image, myModel.getClient(), myModel.getWindow());
+    myGeneration++;
+    myNodeTree.updateHoverPath(null);
+    myShowingSnapshot = true;
+    try {
+      ((DefaultTreeModel)myNodeTree.getModel()).setRoot(root);
+      expandMatchedNodes(root, new TreePath(root), matches, expanded);
+      if (myPreview != null) {
+        myPreview.setPreview(image, root);
+      }
+      TreePath selectionPath = selection != null ? ViewNode.getPathFromParent(selection, root) : new TreePath(root);
+      myNodeTree.setSelectionPath(selectionPath);
+    }
+    finally {
+      myShowingSnapshot = false;
+    }
+
+    ViewNode newSelection = (ViewNode)myNodeTree.getLastSelectedPathComponent();
+    if (newSelection != null && (oldSelection == null || matches.get(newSelection) != oldSelection
+                                 || !hasSameProperties(oldSelection, newSelection))) {
+      Set<String> openGroups = new HashSet<>();
+      for (PTableItem item : myTableItems) {
+        if (item.isExpanded()) {
+          openGroups.add(item.getName());
+        }
+      }
+      List<PTableItem> items = convertToItems(newSelection.getGroupedProperties(), new LayoutInspectorEditHandler());
+      for (PTableItem item : items) {
+        if (openGroups.contains(item.getName())) {
+          item.setExpanded(true);
+        }
+      }
+      setTableItems(items);
+    }
+  }
+
+  /** Expands the nodes matched to expanded ones, and the drawn ones among the others like a new tree does. */
+  private void expandMatchedNodes(@NotNull ViewNode node, @NotNull TreePath path, @NotNull Map<ViewNode, ViewNode> matches,
+                                  @NotNull Set<ViewNode> expanded) {
+    if (node.isLeaf()) return;
+    ViewNode match = matches.get(node);
+    if (match != null ? !expanded.contains(match) : !node.isDrawn()) return;
+    myNodeTree.expandPath(path);
+    for (ViewNode child : node.getChildren()) {
+      expandMatchedNodes(child, path.pathByAddingChild(child), matches, expanded);
+    }
+  }
+
+  private static boolean hasSameProperties(@NotNull ViewNode oldNode, @NotNull ViewNode newNode) {
+    List<ViewProperty> oldProperties = oldNode.getProperties();
+    List<ViewProperty> newProperties = newNode.getProperties();
+    if (oldProperties.size() != newProperties.size()) return false;
+    for (int i = 0; i < oldProperties.size(); i++) {
+      ViewProperty oldProperty = oldProperties.get(i);
+      ViewProperty newProperty = newProperties.get(i);
+      // ViewProperty.equals ignores values
+      if (!oldProperty.getFullName().equals(newProperty.getFullName()) || !oldProperty.getValue().equals(newProperty.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void onLiveCaptureStopped(@Nullable String message) {
+    createNotification("Live updates stopped: " + StringUtil.notNullize(message), NotificationType.ERROR);
   }
 
   public static boolean isDumpDisplayListEnabled() {
@@ -344,6 +628,7 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
 
         // hide sub view menu from the root
         mySubtreePreviewMenuItem.setVisible(!node.equals(myModel.getRoot()));
+        mySubtreePreviewMenuItem.setEnabled(canShowSubView());
 
         myNodePopup.putClientProperty(KEY_VIEW_NODE, node);
 
@@ -411,7 +696,7 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
   private class RenderSubtreePreviewActionListener implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
-      if (myModel.isConnected()) {
+      if (canShowSubView()) {
         showSubView((ViewNode)myNodePopup.getClientProperty(KEY_VIEW_NODE));
       }
     }
@@ -421,8 +706,7 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
     assert (!mySubviewList.isEmpty());
     ViewNode lastNode = mySubviewList.get(mySubviewList.size() - 1);
     if (lastNode == null) return;
-    updatePreview(lastNode);
-    mySubviewList.remove(lastNode);
+    updatePreview(lastNode, () -> mySubviewList.remove(lastNode));
   }
 
   @NotNull
@@ -439,34 +723,106 @@ public class LayoutInspectorContext implements Disposable, DataProvider, ViewNod
                                        ));
 
     ViewNode root = getRoot();
-    updatePreview(node);
-    mySubviewList.add(root);
+    updatePreview(node, () -> mySubviewList.add(root));
   }
 
-  private void updatePreview(@NotNull ViewNode node) {
-    if (!myModel.isConnected()) return;
+  // a subtree is cropped out of the image of the root, and rendered by the device when connected
+  private boolean canShowSubView() {
+    return myModel.isConnected() || myModel.getBufferedImage() != null;
+  }
 
-    byte[] bytes = myModel.getWindow().loadViewImage(node, 10, TimeUnit.SECONDS);
+  /**
+   * Shows the subtree of {@code node} in the tree and the preview, then runs {@code onShown}. The image of the root is the
+   * captured one. Those of other views are loaded from the device in the background, see {@link SubtreeImageCache}, and
+   * cropped out of the image of the root meanwhile, see {@link SubtreePreview}.
+   */
+  private void updatePreview(@NotNull ViewNode node, @NotNull Runnable onShown) {
+    myPendingSubView = null;
+    BufferedImage rootImage = myModel.getBufferedImage();
+    if (node == myModel.getRoot() && rootImage != null) {
+      showPreview(node, rootImage, null);
+      onShown.run();
+      return;
+    }
 
-    if (bytes == null) return;
+    CompletableFuture<BufferedImage> image =
+      myModel.isConnected() ? mySubtreeImages.get(myModel.getWindow(), node, myGeneration) : null;
+    boolean loaded = image != null && image.isDone() && !image.isCompletedExceptionally() && image.join() != null;
+    Runnable onLoaded = onShown;
+    if (!loaded && rootImage != null) {
+      SubtreePreview.Crop cropped = SubtreePreview.crop(rootImage, myModel.getRoot(), node);
+      if (cropped != null) {
+        showPreview(node, cropped.getImage(), cropped.getRegion());
+        onShown.run();
+        onLoaded = null;
+      }
+    }
+    if (image == null) return;
+
+    myPendingSubView = node;
+    if (image.isDone()) {
+      onSubtreeImageLoaded(node, image, onLoaded);
+      return;
+    }
+    Runnable finalOnLoaded = onLoaded;
+    image.whenComplete((result, error) -> ApplicationManager.getApplication().invokeLater(
+      () -> onSubtreeImageLoaded(node, image, finalOnLoaded), o -> myDisposed));
+  }
+
+  /**
+   * Shows the image the device rendered for {@code node}. With a null {@code onShown}, the subtree already shows with a
+   * cropped image, which is only replaced so that the zoom, the selection and the expanded rows stay as they are.
+   */
+  private void onSubtreeImageLoaded(@NotNull ViewNode node,
+                                    @NotNull CompletableFuture<BufferedImage> image,
+                                    @Nullable Runnable onShown) {
+    // another subtree was asked for meanwhile
+    if (myPendingSubView != node) return;
+    myPendingSubView = null;
 
     BufferedImage newImage = null;
     try {
-      newImage = ImageIO.read(new ByteArrayInputStream(bytes));
+      newImage = image.getNow(null);
     }
-    catch (IOException e) {
+    catch (CompletionException | CancellationException e) {
       getLogger().warn(e);
     }
 
+    if (onShown == null) {
+      // keeps the cropped image if the device failed to render one
+      if (newImage != null) {
+        myPreview.setPreview(newImage, node);
+      }
+      return;
+    }
     if (newImage == null) {
       createNotification(AndroidBundle.message("android.ddms.actions.layoutinspector.update.notification.failure"),
                          NotificationType.ERROR);
       return;
     }
+    showPreview(node, newImage, null);
+    onShown.run();
+  }
 
-    myModel = myModel.copy(myModel.getRoot(), newImage, myModel.getClient(), myModel.getWindow());
-    myPreview.setPreview(myModel.getBufferedImage(), node);
+  private void showPreview(@NotNull ViewNode node, @NotNull BufferedImage image, @Nullable Rectangle2D region) {
+    myPreview.setPreview(image, node, region);
     myNodeTree = createNodeTree(node);
     myPreview.repaint();
   }
+
+  // the subtrees of the selected view and of its children are likely to be asked for next
+  private void prefetchSubtreeImages(@NotNull ViewNode selection) {
+    if (!PREFETCH_SUBTREE_IMAGES || !myModel.isConnected()) return;
+    List<ViewNode> nodes = new ArrayList<>(MAX_PREFETCHED_IMAGES);
+    if (selection != myNodeTree.getModel().getRoot()) {
+      nodes.add(selection);
+    }
+    for (ViewNode child : selection.getChildren()) {
+      if (nodes.size() >= MAX_PREFETCHED_IMAGES) break;
+      if (child.isDrawn()) {
+        nodes.add(child);
+      }
+    }
+    mySubtreeImages.prefetch(myModel.getWindow(), nodes, myGeneration);
+  }
 }
@@ -19,34 +19,60 @@ import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
 
 import com.android.ddmlib.Client;
 import com.android.layoutinspectorv2.model.ClientWindow;
+import com.android.layoutinspectorv2.model.LayoutFileData;
 import com.android.layoutinspectorv2.parser.LayoutFileDataParser;
+import com.android.layoutinspectorv2.parser.NodeTableCache;
 import com.intellij.codeHighlighting.BackgroundEditorHighlighter;
 import com.intellij.ide.structureView.StructureViewBuilder;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorLocation;
 import com.intellij.openapi.fileEditor.FileEditorState;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.UserDataHolderBase;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.EditorNotificationPanel;
 import com.intellij.ui.EditorNotifications;
+import com.intellij.ui.components.JBLoadingPanel;
 
+import java.awt.BorderLayout;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeListener;
+import java.io.File;
 import java.io.IOException;
 
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class LayoutInspectorEditor extends UserDataHolderBase implements FileEditor {
+  private static final String OPEN_TITLE = "Opening layout capture";
+
   private final VirtualFile myVirtualFile;
   private final Project myProject;
+  private JPanel myComponent;
+  private JBLoadingPanel myLoadingPanel;
   private LayoutInspectorEditorPanel myPanel;
   private LayoutInspectorContext myContext;
-  
+
+  // sources set before the context exists, applied once it is created
+  @Nullable private Client myPendingClient;
+  @Nullable private ClientWindow myPendingWindow;
+
+  // set while the capture is parsed in the background
+  @Nullable private volatile ProgressIndicator myOpenIndicator;
+  // a subsampled preview decoded before the context was created
+  @Nullable private BufferedImage mySampledPreview;
+  private volatile boolean myDisposed;
+
   public LayoutInspectorEditor(@NotNull Project project, @NotNull VirtualFile file) {
     myVirtualFile = file;
     myProject = project;
@@ -55,22 +81,84 @@ public class LayoutInspectorEditor extends UserDataHolderBase implements FileEdi
   @NotNull
   @Override
   public JComponent getComponent() {
-    if (myPanel == null) {
-      try {
-        myContext = new LayoutInspectorContext(myProject, LayoutFileDataParser.parseFromFile(virtualToIoFile(myVirtualFile)), this);
-      }
-      catch (IOException e) {
-        return new JLabel(e.getLocalizedMessage(), SwingConstants.CENTER);
-      }
+    if (myComponent == null) {
+      myComponent = new JPanel(new BorderLayout());
+      myLoadingPanel = new JBLoadingPanel(new BorderLayout(), this);
+      myLoadingPanel.setLoadingText(OPEN_TITLE);
+      myLoadingPanel.startLoading();
+      myComponent.add(myLoadingPanel, BorderLayout.CENTER);
+      ProgressManager.getInstance().run(new OpenTask(virtualToIoFile(myVirtualFile)));
+    }
+
+    return myComponent;
+  }
+
+  /** Shows a capture parsed before it was saved, connected to the window it was captured from. */
+  private void showSnapshot(@NotNull LayoutSnapshotRegistry.Snapshot snapshot) {
+    if (myPendingClient == null && myPendingWindow == null) {
+      myPendingClient = snapshot.getClient();
+      myPendingWindow = snapshot.getWindow();
+    }
+    showHierarchy(snapshot.getData());
+  }
+
+  /** Shows the tree and the properties panels for a hierarchy whose preview may still be decoding. */
+  private void showHierarchy(@NotNull LayoutFileData data) {
+    myContext = new LayoutInspectorContext(myProject, data, this);
+    if (myPendingClient != null || myPendingWindow != null) {
+      myContext.setSources(myPendingClient, myPendingWindow);
+    }
+    myPanel = new LayoutInspectorEditorPanel(this, myProject, myContext);
+    setContent(myPanel);
+    if (mySampledPreview != null) {
+      myContext.setSampledPreview(mySampledPreview);
+      mySampledPreview = null;
+    }
+  }
+
+  private void showSampledPreview(@NotNull BufferedImage image) {
+    if (myContext == null) {
+      // sampled before the hierarchy was parsed
+      mySampledPreview = image;
+      return;
+    }
+    myContext.setSampledPreview(image);
+  }
+
+  private void showPreview(@NotNull BufferedImage image) {
+    if (myContext != null) {
+      myContext.setBufferedImage(image);
+    }
+  }
 
-      myPanel = new LayoutInspectorEditorPanel(this, myProject, myContext);
+  private void showError(@NotNull String message) {
+    if (myPanel != null) {
+      // the hierarchy is already shown, only the preview is missing
+      Logger.getInstance(LayoutInspectorEditor.class).warn(message);
+      return;
     }
+    setContent(new JLabel(message, SwingConstants.CENTER));
+  }
+
+  private void setContent(@NotNull JComponent content) {
+    myLoadingPanel.stopLoading();
+    myComponent.removeAll();
+    myComponent.add(content, BorderLayout.CENTER);
+    myComponent.revalidate();
+    myComponent.repaint();
+  }
 
-    return myPanel;
+  private void runOnEdt(@NotNull Runnable runnable) {
+    ApplicationManager.getApplication().invokeLater(runnable, o -> myDisposed);
   }
 
   @Override
   public void dispose() {
+    myDisposed = true;
+    ProgressIndicator indicator = myOpenIndicator;
+    if (indicator != null) {
+      indicator.cancel();
+    }
   }
 
   @NotNull
@@ -134,6 +222,11 @@ public class LayoutInspectorEditor extends UserDataHolderBase implements FileEdi
   }
 
   public void setSources(@Nullable Client client, @Nullable ClientWindow window) {
+    if (myContext == null) {
+      myPendingClient = client;
+      myPendingWindow = window;
+      return;
+    }
     myContext.setSources(client, window);
   }
 
@@ -141,4 +234,82 @@ public class LayoutInspectorEditor extends UserDataHolderBase implements FileEdi
   public @NotNull VirtualFile getFile() {
     return myVirtualFile;
   }
+
+  /**
+   * Parses the capture off the EDT. The hierarchy is shown as soon as it is parsed, a subsampled
+   * preview as soon as it is decoded, and the full preview once its image is decoded. Disposing the
+   * editor cancels whatever has not been shown yet. A capture that was just taken is shown as it
+   * was parsed while capturing, see {@link LayoutSnapshotRegistry}.
+   */
+  private class OpenTask extends Task.Backgroundable {
+    @NotNull private final File myFile;
+
+    OpenTask(@NotNull File file) {
+      super(myProject, OPEN_TITLE, true);
+      myFile = file;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+      myOpenIndicator = indicator;
+      try {
+        LayoutSnapshotRegistry registry = LayoutSnapshotRegistry.getInstance(myProject);
+        // taken even once disposed, nothing else would release it
+        LayoutSnapshotRegistry.Snapshot snapshot = registry.take(myFile);
+        if (myDisposed) return;
+        if (snapshot != null) {
+          runOnEdt(() -> showSnapshot(snapshot));
+          return;
+        }
+        indicator.setIndeterminate(true);
+        indicator.setText("Parsing view hierarchy");
+        // a capture opened again may still be written
+        registry.awaitWrite(myFile);
+        LayoutFileData data = LayoutFileDataParser.parseFromFile(myFile, NodeTableCache.getInstance(), new LayoutFileDataParser.Listener() {
+          @Override
+          public void hierarchyParsed(@NotNull LayoutFileData hierarchy) {
+            indicator.checkCanceled();
+            if (hierarchy.getNode() != null) {
+              runOnEdt(() -> showHierarchy(hierarchy));
+            }
+            indicator.setText("Decoding preview");
+          }
+
+          @Override
+          public void previewSampled(@NotNull BufferedImage image) {
+            runOnEdt(() -> showSampledPreview(image));
+          }
+        });
+        indicator.checkCanceled();
+
+        BufferedImage image = data.getBufferedImage();
+        if (data.getNode() == null) {
+          runOnEdt(() -> showError("Error parsing view hierarchy"));
+        }
+        else if (image != null) {
+          runOnEdt(() -> showPreview(image));
+        }
+      }
+      catch (IOException e) {
+        runOnEdt(() -> showError(e.getLocalizedMessage()));
+      }
+      finally {
+        myOpenIndicator = null;
+      }
+    }
+
+    @Override
+    public void onCancel() {
+      if (myDisposed) return;
+      showError("Opening the capture was cancelled");
+    }
+
+    @Override
+    public void onThrowable(@NotNull Throwable error) {
+      // e.g. a corrupt file, or a preview too large for the heap
+      Logger.getInstance(LayoutInspectorEditor.class).warn(error);
+      if (myDisposed) return;
+      showError("Error opening the capture: " + error);
+    }
+  }
 }
@@ -10,6 +10,15 @@ object LayoutInspectorFileHelper {
 
     @JvmStatic
     fun saveToFile(client: Client, project: Project, data: ByteArray): File? {
+        val file = getCaptureFile(client, project) ?: return null
+        file.writeBytes(data)
+
+        return file
+    }
+
+    /** Returns the file in the captures directory of [project] a new capture is saved to. */
+    @JvmStatic
+    fun getCaptureFile(client: Client, project: Project): File? {
         val fileName = getSuggestedName(client, project)
         project.basePath ?: return null
         val projectDir = File(project.basePath) ?: return null
@@ -18,10 +27,7 @@ object LayoutInspectorFileHelper {
             capturesDir.mkdirs()
         }
 
-        val file = File(capturesDir, "$fileName${LayoutInspectorFileType.DOT_EXT_LAYOUT_INSPECTOR}")
-        file.writeBytes(data)
-
-        return file
+        return File(capturesDir, "$fileName${LayoutInspectorFileType.DOT_EXT_LAYOUT_INSPECTOR}")
     }
 
     private fun getSuggestedName(client: Client?, project: Project): String? {
@@ -21,7 +21,7 @@ import com.android.layoutinspectorv2.model.ViewNode
 import java.awt.image.BufferedImage
 
 data class LayoutInspectorModel @JvmOverloads constructor(val root: ViewNode,
-                                                          val bufferedImage: BufferedImage,
+                                                          val bufferedImage: BufferedImage?,
                                                           val client: Client? = null,
                                                           val window: ClientWindow? = null) {
   val isConnected: Boolean
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2
+
+import com.android.ddmlib.Client
+import com.android.layoutinspectorv2.model.ClientWindow
+import com.android.layoutinspectorv2.model.LayoutFileData
+import com.intellij.notification.NotificationType
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.LocalFileSystem
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+
+/**
+ * Hands new captures to the editor that opens them. A capture is already parsed by the time it is
+ * saved, so the first editor opened on its file shows that hierarchy and preview instead of
+ * reading the file back, while the file is written in the background.
+ *
+ * A snapshot no editor will take must be [discard]ed. A failed write discards its snapshot, deletes
+ * the file and tells the user.
+ */
+class LayoutSnapshotRegistry(private val project: Project) {
+  /** A parsed capture and the window it was captured from. */
+  class Snapshot(val data: LayoutFileData, val client: Client?, val window: ClientWindow?)
+
+  private val snapshots = ConcurrentHashMap<String, Snapshot>()
+  private val writes = ConcurrentHashMap<String, CompletableFuture<Void>>()
+
+  /**
+   * Writes [bytes] to [file] on a pooled thread and keeps [snapshot] for the first editor opened
+   * on [file], see [take]. The file is refreshed in the VFS once written.
+   */
+  fun register(file: File, bytes: ByteArray, snapshot: Snapshot) {
+    val key = keyOf(file)
+    snapshots[key] = snapshot
+    val write = CompletableFuture.runAsync(Runnable { file.writeBytes(bytes) }, AppExecutorUtil.getAppExecutorService())
+    writes[key] = write
+    write.whenComplete { _, error ->
+      writes.remove(key, write)
+      if (error != null) {
+        LOG.warn("Cannot save capture to $file", error)
+        // the file holds none of the capture, do not open it later as one
+        snapshots.remove(key)
+        file.delete()
+        val cause = (error as? CompletionException)?.cause ?: error
+        NotificationFixHelper.createNotification(
+          "Cannot save capture to ${file.name}: ${cause.localizedMessage}", NotificationType.ERROR, project)
+      }
+      LocalFileSystem.getInstance().refreshIoFiles(listOf(file), true, false, null)
+    }
+  }
+
+  /** Returns the snapshot registered for [file] and forgets it, or null if there is none. */
+  fun take(file: File): Snapshot? = snapshots.remove(keyOf(file))
+
+  /** Forgets the snapshot registered for [file] when no editor will take it, e.g. it could not be opened. */
+  fun discard(file: File) {
+    snapshots.remove(keyOf(file))
+  }
+
+  /** Waits until a write started by [register] for [file], if any, is done. */
+  @Throws(IOException::class)
+  fun awaitWrite(file: File) {
+    val write = writes[keyOf(file)] ?: return
+    try {
+      write.get()
+    }
+    catch (e: ExecutionException) {
+      throw e.cause as? IOException ?: IOException(e.cause)
+    }
+    catch (e: InterruptedException) {
+      Thread.currentThread().interrupt()
+      throw IOException("Interrupted while saving capture", e)
+    }
+  }
+
+  // the editor finds its file through the VFS, which may resolve the path differently
+  private fun keyOf(file: File): String = try {
+    file.canonicalPath
+  }
+  catch (e: IOException) {
+    file.absolutePath
+  }
+
+  companion object {
+    private val LOG = Logger.getInstance(LayoutSnapshotRegistry::class.java)
+
+    @JvmStatic
+    fun getInstance(project: Project): LayoutSnapshotRegistry = project.getService(LayoutSnapshotRegistry::class.java)
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2;
+
+import com.android.ddmlib.Client;
+import com.android.layoutinspectorv2.LayoutInspectorBridge;
+import com.android.layoutinspectorv2.LayoutInspectorCaptureOptions;
+import com.android.layoutinspectorv2.model.ClientWindow;
+import com.android.layoutinspectorv2.model.LayoutFileData;
+import com.android.layoutinspectorv2.model.SnapshotHistory;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures a window again and again in the background, and hands each snapshot to its {@link LayoutInspectorContext} on the EDT.
+ *
+ * The next capture starts a while after the last snapshot is shown, twice the average time a capture takes, so that a slow
+ * device or a large hierarchy is captured less often and at most a third of the time is spent capturing. The last snapshots
+ * are kept in a {@link SnapshotHistory}, which the editor steps through once live capture is paused.
+ */
+public class LiveCapture {
+  private static final long MIN_INTERVAL_MS = 250;
+  private static final long MAX_INTERVAL_MS = 5000;
+  private static final int INTERVAL_PER_CAPTURE_TIME = 2;
+  // weight of the last capture in the average capture time
+  private static final double AVERAGE_WEIGHT = 0.3;
+  // consecutive failed captures after which live capture stops
+  private static final int MAX_FAILURES = 3;
+
+  @NotNull private final LayoutInspectorContext myContext;
+  @NotNull private final ClientWindow myWindow;
+  @NotNull private final LayoutInspectorCaptureOptions myOptions;
+  @NotNull private final SnapshotHistory myHistory = new SnapshotHistory();
+
+  private volatile boolean myRunning;
+  // tells the captures of a live capture that was stopped from those of the one started again
+  private volatile int myGeneration;
+  @Nullable private Future<?> myNextCapture;
+  private double myAverageCaptureMs = -1;
+  private int myFailures;
+
+  LiveCapture(@NotNull LayoutInspectorContext context, @NotNull Client client, @NotNull ClientWindow window) {
+    myContext = context;
+    myWindow = window;
+    myOptions = LayoutInspectorCaptureTask.createCaptureOptions(client, window);
+  }
+
+  @NotNull
+  public ClientWindow getWindow() {
+    return myWindow;
+  }
+
+  @NotNull
+  public SnapshotHistory getHistory() {
+    return myHistory;
+  }
+
+  public boolean isRunning() {
+    return myRunning;
+  }
+
+  /** Starts capturing right away. Must be called on the EDT, like {@link #stop}. */
+  public void start() {
+    if (myRunning) return;
+    myRunning = true;
+    myGeneration++;
+    myFailures = 0;
+    schedule(0);
+  }
+
+  /** Stops capturing, a capture in flight is dropped once done. */
+  public void stop() {
+    myRunning = false;
+    Future<?> next = myNextCapture;
+    if (next != null) {
+      next.cancel(false);
+      myNextCapture = null;
+    }
+  }
+
+  /** The delay between a snapshot being shown and the next capture. */
+  long getIntervalMs() {
+    if (myAverageCaptureMs < 0) return MIN_INTERVAL_MS;
+    long interval = (long)(myAverageCaptureMs * INTERVAL_PER_CAPTURE_TIME);
+    return Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, interval));
+  }
+
+  private void schedule(long delayMs) {
+    int generation = myGeneration;
+    myNextCapture = AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> capture(generation), delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private boolean isCurrent(int generation) {
+    return myRunning && myGeneration == generation;
+  }
+
+  private void capture(int generation) {
+    if (!isCurrent(generation)) return;
+
+    long startMs = System.currentTimeMillis();
+    LayoutFileData data = null;
+    String error = null;
+    try {
+      data = LayoutInspectorBridge.captureSnapshot(myWindow, myOptions);
+    }
+    catch (IOException e) {
+      error = e.getMessage();
+    }
+    catch (RuntimeException e) {
+      // reported as a failure too, otherwise no capture would be scheduled after this one
+      Logger.getInstance(LiveCapture.class).warn(e);
+      error = e.toString();
+    }
+    long captureMs = System.currentTimeMillis() - startMs;
+
+    LayoutFileData snapshot = data;
+    String message = error;
+    ApplicationManager.getApplication().invokeLater(() -> {
+      if (snapshot != null) {
+        onCaptured(snapshot, captureMs);
+      }
+      else {
+        onFailed(message);
+      }
+    }, o -> !isCurrent(generation));
+  }
+
+  private void onCaptured(@NotNull LayoutFileData snapshot, long captureMs) {
+    myFailures = 0;
+    myAverageCaptureMs = myAverageCaptureMs < 0 ? captureMs : myAverageCaptureMs + (captureMs - myAverageCaptureMs) * AVERAGE_WEIGHT;
+    myHistory.add(snapshot);
+    myContext.showSnapshot(snapshot);
+    schedule(getIntervalMs());
+  }
+
+  private void onFailed(@Nullable String message) {
+    myFailures++;
+    Logger.getInstance(LiveCapture.class).warn("Live capture failed: " + message);
+    if (myFailures >= MAX_FAILURES) {
+      stop();
+      myContext.onLiveCaptureStopped(message);
+      return;
+    }
+    schedule(MAX_INTERVAL_MS);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2
+
+import com.android.layoutinspectorv2.model.ClientWindow
+import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.parser.PreviewImageDecoder
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.awt.image.BufferedImage
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Loads the previews of subtrees from the device in the background, and keeps the last ones used.
+ *
+ * An image is keyed by its window, the hash of its view and the generation of the capture it was
+ * loaded for, since a view keeps its hash when it changes between captures. The least recently
+ * used images are dropped once they add up to more than [maxBytes]. Images are loaded by at most
+ * [LOAD_THREADS] threads, the device renders them one at a time anyway.
+ */
+class SubtreeImageCache(private val maxBytes: Long = DEFAULT_MAX_BYTES) {
+  private data class Key(val window: ClientWindow, val hash: String, val generation: Int)
+
+  private class Entry(val image: CompletableFuture<BufferedImage?>, var prefetch: Boolean) {
+    val bytes: Long
+      get() {
+        val loaded = if (image.isDone && !image.isCompletedExceptionally) image.join() else null
+        return if (loaded == null) 0 else loaded.width.toLong() * loaded.height * 4
+      }
+  }
+
+  // in access order, least recently used first
+  private val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+  private val executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Subtree previews", LOAD_THREADS)
+  private var disposed = false
+
+  /**
+   * Returns the preview of [node] in [window] for the capture [generation], loading it unless it
+   * is cached or already loading. The future completes with null if the device returns no image,
+   * or right away once the cache is disposed.
+   */
+  @Synchronized
+  fun get(window: ClientWindow, node: ViewNode, generation: Int): CompletableFuture<BufferedImage?> {
+    if (disposed) {
+      return CompletableFuture.completedFuture(null)
+    }
+    val key = Key(window, node.hash, generation)
+    val entry = entries[key]
+    if (entry != null) {
+      // no longer cancelled by the next prefetch
+      entry.prefetch = false
+      return entry.image
+    }
+    return load(key, node, false).image
+  }
+
+  /**
+   * Starts loading the previews of [nodes] that are not cached, such as the children of the
+   * selected view. The previews prefetched before and still waiting to be loaded are cancelled.
+   */
+  @Synchronized
+  fun prefetch(window: ClientWindow, nodes: List<ViewNode>, generation: Int) {
+    if (disposed) return
+    for (entry in entries.values.toList()) {
+      if (entry.prefetch) {
+        entry.image.cancel(false)
+      }
+    }
+    for (node in nodes) {
+      val key = Key(window, node.hash, generation)
+      if (!entries.containsKey(key)) {
+        load(key, node, true)
+      }
+    }
+  }
+
+  /** Cancels the pending loads and drops the images. Nothing is loaded afterwards. */
+  fun dispose() {
+    val dropped: List<Entry>
+    synchronized(this) {
+      disposed = true
+      dropped = entries.values.toList()
+      entries.clear()
+    }
+    // the queued loads see their image is cancelled and return
+    executor.shutdown()
+    // completing an image runs onLoaded, which finds its entry gone
+    for (entry in dropped) {
+      entry.image.cancel(false)
+    }
+  }
+
+  private fun load(key: Key, node: ViewNode, prefetch: Boolean): Entry {
+    val image = CompletableFuture<BufferedImage?>()
+    val entry = Entry(image, prefetch)
+    entries[key] = entry
+    executor.execute {
+      // cancelled while waiting
+      if (image.isDone) return@execute
+      try {
+        val bytes = key.window.loadViewImage(node, LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        image.complete(if (bytes == null) null else PreviewImageDecoder.decode(bytes))
+      }
+      catch (e: IOException) {
+        image.completeExceptionally(e)
+      }
+      catch (e: RuntimeException) {
+        image.completeExceptionally(e)
+      }
+    }
+    image.whenComplete { loaded, error -> onLoaded(key, entry, loaded == null || error != null) }
+    return entry
+  }
+
+  @Synchronized
+  private fun onLoaded(key: Key, entry: Entry, failed: Boolean) {
+    if (entries[key] !== entry) return
+    if (failed) {
+      // loaded again when next asked for
+      entries.remove(key)
+      return
+    }
+    var total = entries.values.sumOf { it.bytes }
+    val iterator = entries.values.iterator()
+    while (total > maxBytes && iterator.hasNext()) {
+      val eldest = iterator.next()
+      // the latest image is kept whatever its size
+      if (eldest === entry || !eldest.image.isDone) continue
+      total -= eldest.bytes
+      iterator.remove()
+    }
+  }
+
+  companion object {
+    const val DEFAULT_MAX_BYTES = 64L * 1024 * 1024
+    private const val LOAD_THREADS = 2
+    private const val LOAD_TIMEOUT_SECONDS = 10L
+  }
+}
@@ -36,6 +36,7 @@ public class WindowPickerDialog extends DialogWrapper {
 
   private final JPanel myPanel;
   private final JComboBox myWindowsCombo;
+  private final JCheckBox myAllWindowsCheckBox;
 
   @Nullable ClientWindow mySelectedWindow;
 
@@ -50,6 +51,11 @@ public class WindowPickerDialog extends DialogWrapper {
     myWindowsCombo.setSelectedIndex(0);
     myPanel.add(myWindowsCombo, BorderLayout.CENTER);
 
+    // dialogs, popups and toasts are windows of their own
+    myAllWindowsCheckBox = new JCheckBox("Capture all windows");
+    myAllWindowsCheckBox.addItemListener(e -> myWindowsCombo.setEnabled(!myAllWindowsCheckBox.isSelected()));
+    myPanel.add(myAllWindowsCheckBox, BorderLayout.SOUTH);
+
     init();
   }
 
@@ -78,4 +84,9 @@ public class WindowPickerDialog extends DialogWrapper {
   public ClientWindow getSelectedWindow() {
     return mySelectedWindow;
   }
+
+  /** Whether all the windows are to be captured rather than the selected one. */
+  public boolean isCaptureAllWindows() {
+    return myAllWindowsCheckBox.isSelected();
+  }
 }
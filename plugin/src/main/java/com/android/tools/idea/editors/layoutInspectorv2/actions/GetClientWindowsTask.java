@@ -13,6 +13,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -84,6 +85,14 @@ public final class GetClientWindowsTask extends Task.Backgroundable {
         return;
       }
 
+      if (pickerDialog.isCaptureAllWindows()) {
+        // the windows are listed top first
+        List<ClientWindow> windows = new ArrayList<>(myWindows);
+        Collections.reverse(windows);
+        new LayoutInspectorCaptureTask(myProject, myClient, windows).queue();
+        return;
+      }
+
       window = pickerDialog.getSelectedWindow();
       if (window == null) {
         return;
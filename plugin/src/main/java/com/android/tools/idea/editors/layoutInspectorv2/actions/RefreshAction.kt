@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2.actions
+
+import com.android.tools.idea.editors.layoutInspectorv2.LayoutInspectorContext
+import com.intellij.icons.AllIcons
+import com.intellij.openapi.actionSystem.AnAction
+import com.intellij.openapi.actionSystem.AnActionEvent
+
+/**
+ * Captures the window again and shows the new hierarchy in the same editor, keeping the selection, the expanded nodes,
+ * the forced visibility of views and the open property groups. Only enabled while the editor is connected to the window
+ * it captured.
+ */
+class RefreshAction(private val myContext: LayoutInspectorContext) :
+    AnAction("Refresh", "Capture the window again", AllIcons.Actions.Refresh) {
+
+  override fun update(e: AnActionEvent) {
+    super.update(e)
+    e.presentation.isEnabled = myContext.canRefresh()
+  }
+
+  override fun actionPerformed(e: AnActionEvent) {
+    myContext.refresh()
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2.actions
+
+import com.android.tools.idea.editors.layoutInspectorv2.LayoutInspectorContext
+import com.intellij.icons.AllIcons
+import com.intellij.openapi.actionSystem.AnAction
+import com.intellij.openapi.actionSystem.AnActionEvent
+import javax.swing.Icon
+
+/**
+ * Steps back or forward through the snapshots kept by live updates, showing each in place like live updates do. Only
+ * enabled while live updates are paused.
+ */
+class StepSnapshotAction private constructor(private val myContext: LayoutInspectorContext, private val myOffset: Int,
+                                             text: String, description: String, icon: Icon) :
+    AnAction(text, description, icon) {
+
+  override fun update(e: AnActionEvent) {
+    super.update(e)
+    e.presentation.isEnabled = myContext.canStepSnapshot(myOffset)
+  }
+
+  override fun actionPerformed(e: AnActionEvent) {
+    myContext.stepSnapshot(myOffset)
+  }
+
+  companion object {
+    @JvmStatic
+    fun previous(context: LayoutInspectorContext): StepSnapshotAction =
+      StepSnapshotAction(context, -1, "Previous Snapshot", "Show the previous snapshot of the live updates", AllIcons.Actions.Back)
+
+    @JvmStatic
+    fun next(context: LayoutInspectorContext): StepSnapshotAction =
+      StepSnapshotAction(context, 1, "Next Snapshot", "Show the next snapshot of the live updates", AllIcons.Actions.Forward)
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2.actions
+
+import com.android.tools.idea.editors.layoutInspectorv2.LayoutInspectorContext
+import com.intellij.icons.AllIcons
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.actionSystem.ToggleAction
+
+/**
+ * Turns live updates on or off: while on, the window is captured again in the background and the editor shows the new
+ * hierarchy and preview in place. Only enabled while the editor is connected to the window it captured.
+ */
+class ToggleLiveCaptureAction(private val myContext: LayoutInspectorContext) :
+    ToggleAction("Live Updates", "Capture the window again as it changes", AllIcons.Actions.Resume) {
+
+  override fun update(e: AnActionEvent) {
+    super.update(e)
+    e.presentation.isEnabled = myContext.isConnected
+  }
+
+  override fun isSelected(e: AnActionEvent): Boolean = myContext.isLiveCaptureRunning
+
+  override fun setSelected(e: AnActionEvent, state: Boolean) {
+    myContext.setLiveCaptureRunning(state)
+  }
+}
@@ -18,7 +18,10 @@ package com.android.tools.idea.editors.layoutInspectorv2.ui;
 import com.android.tools.idea.editors.layoutInspectorv2.LayoutInspectorContext;
 import com.google.common.annotations.VisibleForTesting;
 import com.android.tools.idea.editors.layoutInspectorv2.actions.LoadOverlayAction;
+import com.android.tools.idea.editors.layoutInspectorv2.actions.RefreshAction;
 import com.android.tools.idea.editors.layoutInspectorv2.actions.SetOverlayAlphaAction;
+import com.android.tools.idea.editors.layoutInspectorv2.actions.StepSnapshotAction;
+import com.android.tools.idea.editors.layoutInspectorv2.actions.ToggleLiveCaptureAction;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.ui.IdeBorderFactory;
 import com.intellij.ui.ScrollPaneFactory;
@@ -51,6 +54,7 @@ public class LayoutInspectorPanel extends JPanel implements DataProvider, ImageC
   private final Class[] SUPPORTED_IMAGE_ACTIONS = new Class[]{ToggleGridAction.class, ZoomInAction.class, ZoomOutAction.class, ActualSizeAction.class};
 
   @NotNull private final JScrollPane myScrollPane;
+  @NotNull private final LayoutInspectorContext myContext;
 
   @NotNull private ViewNodeActiveDisplay myPreview;
   @NotNull private final ImageZoomModel myZoomModel = new ViewNodeZoomModel();
@@ -59,6 +63,7 @@ public class LayoutInspectorPanel extends JPanel implements DataProvider, ImageC
   public LayoutInspectorPanel(@NotNull LayoutInspectorContext context) {
     super(new BorderLayout());
     setOpaque(true);
+    myContext = context;
 
     myPreview = new ViewNodeActiveDisplay(context.getRoot(), context.getBufferedImage());
     myPreview.addViewNodeActiveDisplayListener(context);
@@ -113,6 +118,11 @@ public class LayoutInspectorPanel extends JPanel implements DataProvider, ImageC
     DefaultActionGroup actionGroup = new DefaultActionGroup();
     actionGroup.add(new LoadOverlayAction(myPreview), Constraints.FIRST);
     actionGroup.add(new SetOverlayAlphaAction(myPreview), new Constraints(Anchor.AFTER, LoadOverlayAction.ACTION_ID));
+    actionGroup.addSeparator();
+    actionGroup.add(new RefreshAction(myContext));
+    actionGroup.add(new ToggleLiveCaptureAction(myContext));
+    actionGroup.add(StepSnapshotAction.previous(myContext));
+    actionGroup.add(StepSnapshotAction.next(myContext));
     return actionGroup;
   }
 
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.editors.layoutInspectorv2.ui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Pre-scaled copies of a preview image, each half the size of the previous one. Painting a zoomed
+ * out preview scales the smallest level that is still at least as large as the drawn area instead
+ * of the full resolution screenshot.
+ */
+public final class PreviewPyramid {
+  // levels are not built below this size, scaling such small images is cheap
+  private static final int MIN_LEVEL_SIZE = 128;
+
+  @NotNull private final BufferedImage mSource;
+  // from the largest to the smallest, the source being the first
+  @NotNull private final List<BufferedImage> mLevels;
+
+  private PreviewPyramid(@NotNull BufferedImage source, @NotNull List<BufferedImage> levels) {
+    mSource = source;
+    mLevels = levels;
+  }
+
+  /**
+   * Builds the levels of {@code source}. Each level is scaled from the previous one with bilinear
+   * interpolation, which averages the pixels a 2x reduction drops. Meant to run in the background.
+   */
+  @NotNull
+  public static PreviewPyramid build(@NotNull BufferedImage source) {
+    List<BufferedImage> levels = new ArrayList<>();
+    levels.add(source);
+    BufferedImage level = source;
+    while (level.getWidth() / 2 >= MIN_LEVEL_SIZE && level.getHeight() / 2 >= MIN_LEVEL_SIZE) {
+      level = halve(level);
+      levels.add(level);
+    }
+    return new PreviewPyramid(source, Collections.unmodifiableList(levels));
+  }
+
+  @NotNull
+  private static BufferedImage halve(@NotNull BufferedImage image) {
+    BufferedImage half = new BufferedImage(image.getWidth() / 2, image.getHeight() / 2, BufferedImage.TYPE_INT_ARGB_PRE);
+    Graphics2D g = half.createGraphics();
+    try {
+      g.setComposite(AlphaComposite.Src);
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      g.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+    }
+    finally {
+      g.dispose();
+    }
+    return half;
+  }
+
+  /** The full resolution image the levels were built from. */
+  @NotNull
+  public BufferedImage getSource() {
+    return mSource;
+  }
+
+  public int getLevelCount() {
+    return mLevels.size();
+  }
+
+  /** Returns the smallest level at least {@code width} x {@code height} pixels, or the source if none is. */
+  @NotNull
+  public BufferedImage getLevel(int width, int height) {
+    for (int i = mLevels.size() - 1; i > 0; i--) {
+      BufferedImage level = mLevels.get(i);
+      if (level.getWidth() >= width && level.getHeight() >= height) {
+        return level;
+      }
+    }
+    return mSource;
+  }
+}
@@ -19,13 +19,15 @@ import com.android.layoutinspectorv2.model.DisplayInfo;
 import com.android.layoutinspectorv2.model.ViewNode;
 import com.android.tools.idea.ui.MaterialColors;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Objects;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.ui.DoubleClickListener;
 import com.intellij.ui.paint.LinePainter2D;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -58,6 +60,12 @@ public class ViewNodeActiveDisplay extends JComponent {
   private ViewNode mRoot;
   @Nullable
   private Image mPreview;
+  // the part of mRoot that mPreview shows, in the coordinates of mRoot, or null if it shows all of it
+  @Nullable
+  private Rectangle2D mPreviewRegion;
+  // scaled copies of mPreview painted when zoomed out, built in the background
+  @Nullable
+  private PreviewPyramid mPreviewPyramid;
 
   private final List<ViewNodeActiveDisplayListener> mListeners = new ArrayList<>();
 
@@ -88,6 +96,7 @@ public class ViewNodeActiveDisplay extends JComponent {
   public ViewNodeActiveDisplay(@NotNull ViewNode root, @Nullable Image preview) {
     mRoot = root;
     mPreview = preview;
+    buildPreviewPyramid();
 
     MyMouseAdapter adapter = new MyMouseAdapter();
     addMouseListener(adapter);
@@ -120,7 +129,8 @@ public class ViewNodeActiveDisplay extends JComponent {
   }
 
   public void setHoverNode(@Nullable ViewNode node) {
-    if (!Objects.equal(node, mHoverNode)) {
+    // by identity, the nodes of a new snapshot equal the old ones they replace
+    if (node != mHoverNode) {
       mHoverNode = node;
       repaint();
 
@@ -131,7 +141,7 @@ public class ViewNodeActiveDisplay extends JComponent {
   }
 
   public void setSelectedNode(@NotNull ViewNode node) {
-    if (!Objects.equal(node, mSelectedNode)) {
+    if (node != mSelectedNode) {
       mSelectedNode = node;
       repaint();
 
@@ -226,11 +236,23 @@ public class ViewNodeActiveDisplay extends JComponent {
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
       }
-      g.drawImage(mPreview, 0, 0, mRoot.getPreviewBox().width, mRoot.getPreviewBox().height,
-                  0, 0, mPreview.getWidth(null), mPreview.getHeight(null), null);
+      Image image = getPreviewForZoom(mPreview, g);
+      Rectangle box = mRoot.getPreviewBox();
+      Rectangle2D region = mPreviewRegion;
+      if (region == null) {
+        g.drawImage(image, 0, 0, box.width, box.height, 0, 0, image.getWidth(null), image.getHeight(null), null);
+      }
+      else {
+        DisplayInfo info = mRoot.getDisplayInfo();
+        double scaleX = (double)box.width / info.getWidth();
+        double scaleY = (double)box.height / info.getHeight();
+        g.drawImage(image, (int)Math.round(region.getMinX() * scaleX), (int)Math.round(region.getMinY() * scaleY),
+                    (int)Math.round(region.getMaxX() * scaleX), (int)Math.round(region.getMaxY() * scaleY),
+                    0, 0, image.getWidth(null), image.getHeight(null), null);
+      }
 
       if (isGridVisible() && mZoomFactor >= SHOW_GRID_LEVEL) {
-        paintGrid(g, mPreview);
+        paintGrid(g);
       }
 
       drawOverlay(g);
@@ -391,20 +413,26 @@ public class ViewNodeActiveDisplay extends JComponent {
     return mGridVisible;
   }
 
-  private void paintGrid(@NotNull Graphics g, @NotNull Image image) {
-    Dimension size = getSize();
-    int imageWidth = image.getWidth(null);
-    int imageHeight = image.getHeight(null);
-    double zoomX = (double)size.width / (double)imageWidth;
-    double zoomY = (double)size.height / (double)imageHeight;
+  /**
+   * Paints a line every {@link GridOptions#DEFAULT_LINE_SPAN} pixels of the device over the root
+   * box. The spacing comes from the size of the root view, not from the preview image, which may
+   * be subsampled or only show a part of the root.
+   */
+  private void paintGrid(@NotNull Graphics g) {
+    Rectangle box = mRoot.getPreviewBox();
+    DisplayInfo info = mRoot.getDisplayInfo();
+    int rootWidth = info.getWidth();
+    int rootHeight = info.getHeight();
+    double zoomX = (double)box.width / (double)rootWidth;
+    double zoomY = (double)box.height / (double)rootHeight;
 
     g.setColor(GridOptions.DEFAULT_LINE_COLOR);
     int lineSpan = GridOptions.DEFAULT_LINE_SPAN;
-    for (int dx = lineSpan; dx < imageWidth; dx += lineSpan) {
-      LinePainter2D.paint((Graphics2D)g, (int)((double)dx * zoomX), 0, (int)((double)dx * zoomX), size.height);
+    for (int dx = lineSpan; dx < rootWidth; dx += lineSpan) {
+      LinePainter2D.paint((Graphics2D)g, (int)((double)dx * zoomX), 0, (int)((double)dx * zoomX), box.height);
     }
-    for (int dy = lineSpan; dy < imageHeight; dy += lineSpan) {
-      LinePainter2D.paint((Graphics2D)g, 0, (int)((double)dy * zoomY), size.width, (int)((double)dy * zoomY));
+    for (int dy = lineSpan; dy < rootHeight; dy += lineSpan) {
+      LinePainter2D.paint((Graphics2D)g, 0, (int)((double)dy * zoomY), box.width, (int)((double)dy * zoomY));
     }
   }
 
@@ -434,12 +462,53 @@ public class ViewNodeActiveDisplay extends JComponent {
   }
 
   public void setPreview(@NotNull BufferedImage preview, ViewNode root) {
+    setPreview(preview, root, null);
+  }
+
+  /** Shows {@code preview} over the {@code region} of {@code root}, in the coordinates of {@code root}, or over all of it. */
+  public void setPreview(@NotNull BufferedImage preview, ViewNode root, @Nullable Rectangle2D region) {
     mPreview = preview;
+    mPreviewRegion = region;
+    mPreviewPyramid = null;
     mRoot = root;
     updateBounds = true;
+    buildPreviewPyramid();
     repaint();
   }
 
+  private void buildPreviewPyramid() {
+    if (!(mPreview instanceof BufferedImage)) {
+      return;
+    }
+    BufferedImage source = (BufferedImage)mPreview;
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      PreviewPyramid pyramid = PreviewPyramid.build(source);
+      ApplicationManager.getApplication().invokeLater(() -> {
+        // the preview may have been replaced while the levels were built
+        if (mPreview == source) {
+          mPreviewPyramid = pyramid;
+          repaint();
+        }
+      });
+    });
+  }
+
+  /**
+   * Returns the image to paint for the current zoom: the smallest level of the pyramid covering the
+   * device pixels of the preview box when zoomed out, the full preview otherwise.
+   */
+  @NotNull
+  private Image getPreviewForZoom(@NotNull Image preview, @NotNull Graphics2D g) {
+    PreviewPyramid pyramid = mPreviewPyramid;
+    if (pyramid == null || pyramid.getSource() != preview || Float.compare(mZoomFactor, 1.0f) >= 0) {
+      return preview;
+    }
+    AffineTransform transform = g.getTransform();
+    int width = (int)Math.ceil(mRoot.getPreviewBox().width * transform.getScaleX());
+    int height = (int)Math.ceil(mRoot.getPreviewBox().height * transform.getScaleY());
+    return pyramid.getLevel(width, height);
+  }
+
   private class MyMouseAdapter extends MouseAdapter {
 
     @Override
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2
+
+import com.android.layoutinspectorv2.parser.V2DumpWriter
+import com.android.layoutinspectorv2.parser.ViewNodeV2Parser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PropertyProjectionTest {
+    @Test
+    fun identityAcceptsEverything() {
+        assertTrue(PropertyProjection.ALL.isIdentity)
+        assertTrue(PropertyProjection.ALL.accepts("text:mText"))
+        assertTrue(PropertyProjection.ALL.accepts("bg_"))
+    }
+
+    @Test
+    fun categoryAllowlistKeepsOnlyItsCategories() {
+        val projection = PropertyProjection(categories = setOf("layout"))
+
+        assertTrue(projection.accepts("layout:mLeft"))
+        assertFalse(projection.accepts("text:mText"))
+        // no category
+        assertFalse(projection.accepts("bg_"))
+    }
+
+    @Test
+    fun nameRulesWinOverCategoryRules() {
+        val projection = PropertyProjection(
+            categories = setOf("layout"),
+            excludedCategories = setOf("drawing"),
+            names = setOf("drawing:getAlpha()"),
+            excludedNames = setOf("mLeft")
+        )
+
+        assertFalse(projection.accepts("layout:mLeft"))
+        assertTrue(projection.accepts("layout:mTop"))
+        assertTrue(projection.accepts("drawing:getAlpha()"))
+        assertFalse(projection.accepts("drawing:getScaleX()"))
+    }
+
+    @Test
+    fun nameAllowlistMatchesNamesWithoutCategory() {
+        val projection = PropertyProjection(names = setOf("mText"))
+
+        assertTrue(projection.accepts("text:mText"))
+        assertFalse(projection.accepts("layout:mLeft"))
+    }
+
+    @Test
+    fun jsonRoundTrips() {
+        val projection = PropertyProjection(setOf("layout"), setOf("drawing"), setOf("mText"), setOf("mLeft"))
+
+        val read = PropertyProjection.fromJson(projection.toJson())
+
+        assertEquals(projection.categories, read.categories)
+        assertEquals(projection.excludedCategories, read.excludedCategories)
+        assertEquals(projection.names, read.names)
+        assertEquals(projection.excludedNames, read.excludedNames)
+    }
+
+    @Test
+    fun v2ParserSkipsRejectedPropertiesButKeepsRequiredOnes() {
+        val projection = PropertyProjection(names = setOf("alpha"))
+
+        val title = ViewNodeV2Parser(projection).parse(V2DumpWriter.smallDump())!!.children[0]
+
+        assertNotNull(title.getProperty("alpha"))
+        assertNull(title.getProperty("isFocused"))
+        assertNull(title.getProperty("text"))
+        // needed by the tree and the preview
+        assertEquals("id/title", title.id)
+        assertEquals(300, title.displayInfo.width)
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.model
+
+import com.android.layoutinspectorv2.LayoutInspectorCaptureOptions
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.awt.image.BufferedImage
+
+class SnapshotHistoryTest {
+    @Test
+    fun oldestSnapshotsAreDroppedPastTheCount() {
+        val history = SnapshotHistory(maxSnapshots = 3)
+        val snapshots = List(5) { snapshot(1) }
+
+        snapshots.forEach { history.add(it) }
+
+        assertEquals(3, history.size)
+        assertSame(snapshots[2], history[0])
+        assertSame(snapshots[4], history[2])
+        assertSame(snapshots[4], history.latest())
+    }
+
+    @Test
+    fun oldestSnapshotsAreDroppedPastTheSize() {
+        val bytes = SnapshotHistory.estimateBytes(snapshot(10))
+        val history = SnapshotHistory(maxBytes = 2 * bytes)
+
+        repeat(3) { history.add(snapshot(10)) }
+
+        assertEquals(2, history.size)
+        assertEquals(2 * bytes, history.bytes)
+    }
+
+    @Test
+    fun latestSnapshotIsKeptWhateverItsSize() {
+        val history = SnapshotHistory(maxBytes = 1)
+        val snapshot = snapshot(10)
+
+        history.add(snapshot(10))
+        history.add(snapshot)
+
+        assertEquals(1, history.size)
+        assertSame(snapshot, history.latest())
+    }
+
+    @Test
+    fun estimateCountsThePixelsAndTheNodes() {
+        val withImage = snapshot(4)
+        val withoutImage = LayoutFileData(null, withImage.node, withImage.options)
+
+        assertEquals(4L * 4 * 4, SnapshotHistory.estimateBytes(withImage) - SnapshotHistory.estimateBytes(withoutImage))
+        assertEquals(
+            3 * SnapshotHistory.estimateBytes(LayoutFileData(null, ViewNode(null, "android.view.View", "1"), withImage.options)),
+            SnapshotHistory.estimateBytes(withoutImage)
+        )
+    }
+
+    @Test
+    fun clearDropsEverySnapshot() {
+        val history = SnapshotHistory()
+        history.add(snapshot(1))
+
+        history.clear()
+
+        assertEquals(0, history.size)
+        assertEquals(0, history.bytes)
+        assertNull(history.latest())
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun indexPastTheSnapshotsFails() {
+        val history = SnapshotHistory()
+        history.add(snapshot(1))
+        history[1]
+    }
+
+    /** A root with two children and a [size] by [size] preview. */
+    private fun snapshot(size: Int): LayoutFileData {
+        val root = ViewNode(null, "android.widget.FrameLayout", "1")
+        root.children.add(ViewNode(root, "android.view.View", "2"))
+        root.children.add(ViewNode(root, "android.view.View", "3"))
+        return LayoutFileData(BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB), root, LayoutInspectorCaptureOptions())
+    }
+}
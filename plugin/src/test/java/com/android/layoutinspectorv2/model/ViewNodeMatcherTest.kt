@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.model
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class ViewNodeMatcherTest {
+    @Test
+    fun nodesAreMatchedByHash() {
+        val oldRoot = node(null, DECOR, "1")
+        val oldText = node(node(oldRoot, FRAME, "2"), TEXT, "3")
+        val newRoot = node(null, DECOR, "1")
+        // moved to another parent
+        val newText = node(node(newRoot, LINEAR, "4"), TEXT, "3")
+
+        val matches = ViewNodeMatcher.match(oldRoot, newRoot)
+
+        assertSame(oldRoot, matches[newRoot])
+        assertSame(oldText, matches[newText])
+    }
+
+    @Test
+    fun nodesOfAnotherClassAreNotMatched() {
+        val oldRoot = node(null, DECOR, "1")
+        node(oldRoot, TEXT, "2")
+        val newRoot = node(null, DECOR, "1")
+        val image = node(newRoot, IMAGE, "2")
+
+        assertNull(ViewNodeMatcher.match(oldRoot, newRoot)[image])
+    }
+
+    @Test
+    fun recreatedNodesAreMatchedByIdPath() {
+        val oldRoot = node(null, DECOR, "1")
+        val oldTitle = node(node(oldRoot, FRAME, "2", "id/content"), TEXT, "3", "id/title")
+        val newRoot = node(null, DECOR, "1")
+        // under a new parent of another class, so only the id path matches
+        val newTitle = node(node(newRoot, LINEAR, "5", "id/content"), TEXT, "6", "id/title")
+
+        assertSame(oldTitle, ViewNodeMatcher.match(oldRoot, newRoot)[newTitle])
+    }
+
+    @Test
+    fun ambiguousIdPathsAreNotMatched() {
+        val oldRoot = node(null, DECOR, "1")
+        val list = node(oldRoot, FRAME, "2")
+        node(list, TEXT, "3", "id/item")
+        node(list, TEXT, "4", "id/item")
+        val newRoot = node(null, DECOR, "1")
+        val item = node(node(newRoot, LINEAR, "5"), TEXT, "6", "id/item")
+
+        assertNull(ViewNodeMatcher.match(oldRoot, newRoot)[item])
+    }
+
+    @Test
+    fun remainingChildrenAreMatchedByPosition() {
+        val oldRoot = node(null, DECOR, "1")
+        val oldFirst = node(oldRoot, TEXT, "2")
+        node(oldRoot, TEXT, "3")
+        val newRoot = node(null, DECOR, "10")
+        val newFirst = node(newRoot, TEXT, "20")
+        val newSecond = node(newRoot, IMAGE, "30")
+
+        val matches = ViewNodeMatcher.match(oldRoot, newRoot)
+
+        assertSame(oldRoot, matches[newRoot])
+        assertSame(oldFirst, matches[newFirst])
+        assertFalse(matches.containsKey(newSecond))
+    }
+
+    @Test
+    fun oldNodesAreMatchedOnce() {
+        val oldRoot = node(null, DECOR, "1")
+        val oldText = node(oldRoot, TEXT, "2")
+        val newRoot = node(null, DECOR, "1")
+        val first = node(newRoot, TEXT, "2")
+        val second = node(newRoot, TEXT, "2")
+
+        val matches = ViewNodeMatcher.match(oldRoot, newRoot)
+
+        assertSame(oldText, matches[first])
+        assertNull(matches[second])
+        assertEquals(2, matches.size)
+    }
+
+    private fun node(parent: ViewNode?, name: String, hash: String, id: String = "NO_ID"): ViewNode {
+        val node = ViewNode(parent, name, hash)
+        node.id = id
+        parent?.children?.add(node)
+        return node
+    }
+
+    companion object {
+        private const val DECOR = "com.android.internal.policy.DecorView"
+        private const val FRAME = "android.widget.FrameLayout"
+        private const val LINEAR = "android.widget.LinearLayout"
+        private const val TEXT = "android.widget.TextView"
+        private const val IMAGE = "android.widget.ImageView"
+    }
+}
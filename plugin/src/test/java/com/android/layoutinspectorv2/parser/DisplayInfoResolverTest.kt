@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.model.PropertyKey
+import com.android.layoutinspectorv2.model.ViewNode
+import com.android.layoutinspectorv2.model.ViewProperty
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DisplayInfoResolverTest {
+    @Test
+    fun resolverMatchesTheFactoryForTextProperties() {
+        val node = node(
+            text("layout:mLeft", "10"),
+            text("layout:mTop", "20"),
+            text("layout:getWidth()", "300"),
+            text("layout:getHeight()", "40"),
+            text("scrolling:mScrollY", "5"),
+            text("drawing:willNotDraw()", "true"),
+            text("drawing:getClipChildren()", "false"),
+            text("drawing:getScaleX()", "2.0"),
+            text("text:mText", "hello"),
+            text("misc:getVisibility()", "VISIBLE")
+        )
+        val resolver = DisplayInfoResolver.forNames(node.namedProperties.keys)
+
+        val info = resolver.createDisplayInfo(node)
+
+        assertEquals(DisplayInfoFactory.createDisplayInfoFromNode(node), info)
+        assertEquals(DisplayInfoResolver.ALL_ALIASES.createDisplayInfo(node), info)
+        assertEquals(10, info.left)
+        assertEquals(300, info.width)
+        assertEquals(5, info.scrollY)
+        assertTrue(info.willNotDraw)
+        assertFalse(info.clipChildren)
+        assertEquals(2f, info.scaleX, 0f)
+        assertEquals("hello", info.contentDesc)
+    }
+
+    @Test
+    fun resolverMatchesTheFactoryForTypedProperties() {
+        val root = ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!
+        val names = HashSet<String>()
+        forEach(root) { names.addAll(it.namedProperties.keys) }
+        val resolver = DisplayInfoResolver.forNames(names)
+
+        forEach(root) { assertEquals(DisplayInfoFactory.createDisplayInfoFromNode(it), resolver.createDisplayInfo(it)) }
+    }
+
+    @Test
+    fun missingPropertiesUseTheDefaults() {
+        val info = DisplayInfoResolver.forNames(emptySet()).createDisplayInfo(node())
+
+        assertEquals(0, info.left)
+        assertEquals(10, info.width)
+        assertEquals(10, info.height)
+        assertEquals(1f, info.scaleY, 0f)
+        assertTrue(info.clipChildren)
+        assertTrue(info.isVisible)
+        assertNull(info.contentDesc)
+    }
+
+    @Test
+    fun nullContentDescriptionFallsBackToTheText() {
+        val node = node(text("accessibility:getContentDescription()", "null"), text("text:mText", "label"))
+
+        assertEquals("label", DisplayInfoResolver.ALL_ALIASES.createDisplayInfo(node).contentDesc)
+    }
+
+    @Test
+    fun visibilityIsReadFromTextAndIntValues() {
+        val gone = node(text("misc:getVisibility()", "GONE"))
+        val invisible = node(ViewProperty.ofInt(PropertyKey("visibility", "visibility", null), 4))
+        val visible = node(ViewProperty.ofInt(PropertyKey("visibility", "visibility", null), 0))
+
+        assertFalse(DisplayInfoResolver.ALL_ALIASES.createDisplayInfo(gone).isVisible)
+        assertFalse(DisplayInfoResolver.ALL_ALIASES.createDisplayInfo(invisible).isVisible)
+        assertTrue(DisplayInfoResolver.ALL_ALIASES.createDisplayInfo(visible).isVisible)
+    }
+
+    @Test
+    fun resolverOnlyReadsTheNamesOfItsCapture() {
+        val node = node(text("layout:mLeft", "10"), text("left", "20"))
+
+        assertEquals(10, DisplayInfoResolver.forNames(setOf("layout:mLeft")).createDisplayInfo(node).left)
+        assertEquals(20, DisplayInfoResolver.forNames(setOf("left")).createDisplayInfo(node).left)
+    }
+
+    private fun text(fullName: String, value: String): ViewProperty {
+        val colon = fullName.indexOf(':')
+        return if (colon < 0)
+            ViewProperty(fullName, fullName, null, value)
+        else
+            ViewProperty(fullName, fullName.substring(colon + 1), fullName.substring(0, colon), value)
+    }
+
+    private fun node(vararg properties: ViewProperty): ViewNode {
+        val node = ViewNode(null, "android.view.View", "1")
+        for (property in properties) {
+            node.properties.add(property)
+            node.namedProperties[property.fullName] = property
+        }
+        return node
+    }
+
+    private fun forEach(node: ViewNode, action: (ViewNode) -> Unit) {
+        action(node)
+        node.children.forEach { forEach(it, action) }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.PropertyProjection
+import com.android.layoutinspectorv2.ProtocolVersion
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.Random
+import java.util.zip.Deflater
+
+class LayoutFileContainerTest {
+    @Test
+    fun rawSectionsRoundTrip() {
+        val options = "{\"version\":\"2\"}".toByteArray()
+        val hierarchy = ByteArray(10000) { (it % 7).toByte() }
+        val container = read(
+            LayoutFileContainer.Builder()
+                .addSection(LayoutFileContainer.SECTION_OPTIONS, options)
+                .addSection(LayoutFileContainer.SECTION_HIERARCHY, hierarchy)
+        )
+
+        assertArrayEquals(options, bytes(container.section(LayoutFileContainer.SECTION_OPTIONS)!!))
+        assertArrayEquals(hierarchy, bytes(container.section(LayoutFileContainer.SECTION_HIERARCHY)!!))
+        assertArrayEquals(hierarchy, container.sectionStream(LayoutFileContainer.SECTION_HIERARCHY)!!.use { it.readBytes() })
+        assertNull(container.section(LayoutFileContainer.SECTION_PREVIEW))
+    }
+
+    @Test
+    fun deflatedSectionsRoundTrip() {
+        val hierarchy = ByteArray(10000) { (it % 7).toByte() }
+        val container = read(
+            LayoutFileContainer.Builder()
+                .addDeflatedSection(LayoutFileContainer.SECTION_HIERARCHY, hierarchy, Deflater.BEST_SPEED)
+        )
+
+        assertTrue(container.isDeflated(LayoutFileContainer.SECTION_HIERARCHY))
+        assertTrue(container.storedSection(LayoutFileContainer.SECTION_HIERARCHY)!!.remaining() < hierarchy.size)
+        assertArrayEquals(hierarchy, bytes(container.section(LayoutFileContainer.SECTION_HIERARCHY)!!))
+        assertArrayEquals(hierarchy, container.sectionStream(LayoutFileContainer.SECTION_HIERARCHY)!!.use { it.readBytes() })
+    }
+
+    @Test
+    fun incompressibleSectionIsStoredRaw() {
+        val preview = ByteArray(4096).also { Random(1).nextBytes(it) }
+        val container = read(
+            LayoutFileContainer.Builder()
+                .addDeflatedSection(LayoutFileContainer.SECTION_PREVIEW, preview, Deflater.BEST_COMPRESSION)
+        )
+
+        assertFalse(container.isDeflated(LayoutFileContainer.SECTION_PREVIEW))
+        assertArrayEquals(preview, bytes(container.section(LayoutFileContainer.SECTION_PREVIEW)!!))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun invalidDeflateLevelIsRejected() {
+        LayoutFileContainer.Builder().addDeflatedSection(LayoutFileContainer.SECTION_HIERARCHY, ByteArray(10), 42)
+    }
+
+    @Test
+    fun unknownSectionsAreSkipped() {
+        val options = "{}".toByteArray()
+        val container = read(
+            LayoutFileContainer.Builder()
+                .addSection(UNKNOWN_SECTION, byteArrayOf(1, 2, 3))
+                .addSection(LayoutFileContainer.SECTION_OPTIONS, options)
+        )
+
+        assertTrue(container.hasSection(UNKNOWN_SECTION))
+        assertArrayEquals(options, bytes(container.section(LayoutFileContainer.SECTION_OPTIONS)!!))
+    }
+
+    @Test
+    fun windowsRoundTrip() {
+        val windows = listOf(
+            write(LayoutFileContainer.Builder().addSection(LayoutFileContainer.SECTION_OPTIONS, "{\"title\":\"a\"}".toByteArray())),
+            write(LayoutFileContainer.Builder().addSection(LayoutFileContainer.SECTION_OPTIONS, "{\"title\":\"b\"}".toByteArray()))
+        )
+
+        val read = LayoutFileContainer.readWindows(ByteBuffer.wrap(LayoutFileContainer.writeWindows(windows)))
+
+        assertEquals(windows.size, read.size)
+        for (i in windows.indices) {
+            assertArrayEquals(windows[i], bytes(read[i]))
+            assertTrue(LayoutFileContainer.isContainer(read[i]))
+        }
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedWindowsFail() {
+        val section = LayoutFileContainer.writeWindows(listOf(ByteArray(100)))
+        LayoutFileContainer.readWindows(ByteBuffer.wrap(section, 0, section.size - 1))
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedSectionFails() {
+        val file = write(LayoutFileContainer.Builder().addSection(LayoutFileContainer.SECTION_HIERARCHY, ByteArray(100)))
+        LayoutFileContainer.read(ByteBuffer.wrap(file, 0, file.size - 1))
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedSectionTableFails() {
+        val file = write(
+            LayoutFileContainer.Builder()
+                .addSection(LayoutFileContainer.SECTION_OPTIONS, ByteArray(0))
+                .addSection(LayoutFileContainer.SECTION_HIERARCHY, ByteArray(0))
+        )
+        LayoutFileContainer.read(ByteBuffer.wrap(file, 0, 20))
+    }
+
+    @Test(expected = IOException::class)
+    fun deflatedSectionLongerThanItsLengthFails() {
+        val file = write(
+            LayoutFileContainer.Builder()
+                .addDeflatedSection(LayoutFileContainer.SECTION_HIERARCHY, ByteArray(1000), Deflater.DEFAULT_COMPRESSION)
+        )
+        // the inflated length, just past the header and the section table
+        val lengthOffset = 8 + 24
+        ByteBuffer.wrap(file).putLong(lengthOffset, 999)
+        read(file).section(LayoutFileContainer.SECTION_HIERARCHY)
+    }
+
+    @Test
+    fun legacyFilesAreNotContainers() {
+        val legacy = ByteArrayOutputStream()
+        DataOutputStream(legacy).use {
+            // object stream magic and version
+            it.writeShort(0xACED)
+            it.writeShort(5)
+            it.writeInt(0)
+        }
+
+        assertFalse(LayoutFileContainer.isContainer(ByteBuffer.wrap(legacy.toByteArray())))
+    }
+
+    @Test
+    fun lazyParseOfADirectSectionDoesNotKeepIt() {
+        val dump = V2DumpWriter.smallDump()
+        val file = write(LayoutFileContainer.Builder().addSection(LayoutFileContainer.SECTION_HIERARCHY, dump))
+        // stands for a mapped file
+        val direct = ByteBuffer.allocateDirect(file.size)
+        direct.put(file).flip()
+        val hierarchy = LayoutFileContainer.read(direct).section(LayoutFileContainer.SECTION_HIERARCHY)!!
+
+        val root = ViewNodeParser.parse(
+            hierarchy, ProtocolVersion.Version2, emptyList(), PropertyProjection.ALL, true, false
+        )!!
+        // the file changes once parsed
+        direct.clear()
+        direct.put(ByteArray(file.size))
+
+        assertFalse(root.children[0].isPropertiesLoaded)
+        assertEquals(V2DumpWriter.describe(ViewNodeV2Parser().parse(dump)!!), V2DumpWriter.describe(root))
+    }
+
+    private fun write(builder: LayoutFileContainer.Builder): ByteArray {
+        val out = ByteArrayOutputStream()
+        builder.writeTo(out)
+        return out.toByteArray()
+    }
+
+    private fun read(builder: LayoutFileContainer.Builder): LayoutFileContainer {
+        return read(write(builder))
+    }
+
+    private fun read(file: ByteArray): LayoutFileContainer {
+        return LayoutFileContainer.read(ByteBuffer.wrap(file))
+    }
+
+    private fun bytes(buffer: ByteBuffer): ByteArray {
+        val bytes = ByteArray(buffer.remaining())
+        buffer.duplicate().get(bytes)
+        return bytes
+    }
+
+    companion object {
+        private const val UNKNOWN_SECTION = 99
+    }
+}
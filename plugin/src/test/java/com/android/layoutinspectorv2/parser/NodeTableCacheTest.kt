@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.model.ViewNode
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.file.Files
+
+class NodeTableCacheTest {
+    private lateinit var mDirectory: File
+
+    @Before
+    fun setUp() {
+        mDirectory = Files.createTempDirectory("node-tables").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        mDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun storedTableLoadsTheSameTree() {
+        val cache = NodeTableCache(mDirectory)
+        val root = ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!
+        cache.store(KEY, root)
+
+        val loaded = cache.load(KEY)!!
+
+        assertEquals(describe(root), describe(loaded))
+    }
+
+    @Test
+    fun loadedPropertiesAreDecodedOnceQueried() {
+        val cache = NodeTableCache(mDirectory)
+        val root = ViewNodeV2Parser(lazyProperties = true).parse(V2DumpWriter.smallDump())!!
+        cache.store(KEY, root)
+
+        val loaded = cache.load(KEY)!!
+
+        val title = loaded.children[0]
+        assertFalse(title.isPropertiesLoaded)
+        // the tree and the preview do not need the properties
+        assertEquals("id/title", title.id)
+        assertEquals(root.children[0].displayInfo, title.displayInfo)
+        assertFalse(title.isPropertiesLoaded)
+        assertEquals("héllo ✓", title.getProperty("text")!!.value)
+        assertTrue(title.isPropertiesLoaded)
+        assertFalse(title.groupedProperties.containsKey("meta"))
+        assertEquals(describe(root), describe(loaded))
+    }
+
+    @Test
+    fun corruptTableIsDropped() {
+        val cache = NodeTableCache(mDirectory)
+        cache.store(KEY, ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!)
+        val file = File(mDirectory, "$KEY.nodes")
+        RandomAccessFile(file, "rw").use { it.setLength(it.length() / 2) }
+
+        assertNull(cache.load(KEY))
+        assertFalse(file.exists())
+    }
+
+    @Test
+    fun missingTableIsNotLoaded() {
+        assertNull(NodeTableCache(mDirectory).load(KEY))
+    }
+
+    @Test
+    fun leastRecentlyUsedTablesAreEvictedFirst() {
+        val root = ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!
+        NodeTableCache(mDirectory).store("old", root)
+        val size = File(mDirectory, "old.nodes").length()
+        File(mDirectory, "old.nodes").setLastModified(System.currentTimeMillis() - 60_000)
+
+        NodeTableCache(mDirectory, maxBytes = size + size / 2).store("new", root)
+
+        assertFalse(File(mDirectory, "old.nodes").exists())
+        assertTrue(File(mDirectory, "new.nodes").exists())
+    }
+
+    @Test
+    fun expiredTablesAreEvicted() {
+        val cache = NodeTableCache(mDirectory, maxAgeMillis = 1000)
+        cache.store(KEY, ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!)
+        File(mDirectory, "$KEY.nodes").setLastModified(System.currentTimeMillis() - 60_000)
+
+        cache.evict()
+
+        assertNull(cache.load(KEY))
+    }
+
+    @Test
+    fun keyDependsOnTheSkippedPropertiesAndTheParts() {
+        val cache = NodeTableCache(mDirectory)
+        val parts = listOf(ByteBuffer.wrap(byteArrayOf(1, 2)), ByteBuffer.wrap(byteArrayOf(3)))
+
+        val key = cache.keyOf(parts, listOf("bg_"))
+
+        assertEquals(key, cache.keyOf(listOf(ByteBuffer.wrap(byteArrayOf(1, 2)), ByteBuffer.wrap(byteArrayOf(3))), listOf("bg_")))
+        assertNotEquals(key, cache.keyOf(parts, listOf("fg_")))
+        // the same bytes split differently
+        assertNotEquals(key, cache.keyOf(listOf(ByteBuffer.wrap(byteArrayOf(1)), ByteBuffer.wrap(byteArrayOf(2, 3))), listOf("bg_")))
+        // the parts are not consumed
+        assertEquals(2, parts[0].remaining())
+    }
+
+    private fun describe(root: ViewNode): String {
+        val sb = StringBuilder()
+        fun append(node: ViewNode) {
+            sb.append(node.name).append('@').append(node.hash).append(' ').append(node.id).append(' ')
+                .append(node.index).append(' ').append(node.displayInfo).append('\n')
+            node.properties.forEach { sb.append("  ").append(it.fullName).append('=').append(it.value).append('\n') }
+            node.namedProperties.keys.sorted().forEach { sb.append("  named ").append(it).append('\n') }
+            node.groupedProperties.keys.sorted().forEach { sb.append("  group ").append(it).append('\n') }
+            node.children.forEach { append(it) }
+        }
+        append(root)
+        return sb.toString()
+    }
+
+    companion object {
+        private const val KEY = "capture"
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.util.Random
+
+class QoiCodecTest {
+    @Test
+    fun opaqueImageRoundTrips() {
+        val random = Random(1)
+        val image = image(97, 61) { x, y ->
+            when {
+                // flat areas and runs
+                y < 20 -> if (x < 50) 0xFF000000.toInt() else 0xFF102030.toInt()
+                // small steps, encoded as differences
+                y < 40 -> 0xFF000000.toInt() or ((x * 3 and 0xFF) shl 16) or ((y + x / 7 and 0xFF) shl 8) or random.nextInt(3)
+                else -> random.nextInt() or 0xFF000000.toInt()
+            }
+        }
+
+        val decoded = QoiCodec.decode(ByteArrayInputStream(QoiCodec.encode(image)))
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, decoded.type)
+        assertArrayEquals(pixels(image), pixels(decoded))
+    }
+
+    @Test
+    fun translucentImageIsDecodedPremultiplied() {
+        val random = Random(2)
+        val image = image(53, 47) { x, _ ->
+            when (x % 3) {
+                0 -> 0
+                1 -> random.nextInt()
+                else -> 0x80FF8040.toInt()
+            }
+        }
+
+        val decoded = QoiCodec.decode(ByteArrayInputStream(QoiCodec.encode(image)))
+
+        // the same rounding as Java2D converting to premultiplied alpha
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, decoded.type)
+        assertArrayEquals(pixels(PreviewImageDecoder.toDisplayFormat(image)), pixels(decoded))
+    }
+
+    @Test
+    fun runsAreSplitAtTheMaximumLength() {
+        val red = 0xFFFF0000.toInt()
+        // one difference from the initial black pixel, then a run of exactly 62
+        val single = QoiCodec.encode(image(1 + 62, 1) { _, _ -> red })
+        // then two full runs
+        val double = QoiCodec.encode(image(1 + 2 * 62, 1) { _, _ -> red })
+
+        assertEquals(HEADER_SIZE + 1 + 1 + END_MARKER_SIZE, single.size)
+        assertEquals(HEADER_SIZE + 1 + 2 + END_MARKER_SIZE, double.size)
+        assertTrue(pixels(QoiCodec.decode(ByteArrayInputStream(double))).all { it == red })
+    }
+
+    @Test
+    fun repeatedColorsAreEncodedAsIndexHits() {
+        // too far apart for a difference, and in different slots of the index
+        val a = 0xFF102030.toInt()
+        val b = 0xFFC08040.toInt()
+        val image = image(4, 1) { x, _ -> if (x % 2 == 0) a else b }
+
+        val encoded = QoiCodec.encode(image)
+
+        // two RGB ops, then two index hits
+        assertEquals(HEADER_SIZE + 4 + 4 + 1 + 1 + END_MARKER_SIZE, encoded.size)
+        assertArrayEquals(intArrayOf(a, b, a, b), pixels(QoiCodec.decode(ByteArrayInputStream(encoded))))
+    }
+
+    @Test
+    fun headerIsRecognized() {
+        val encoded = QoiCodec.encode(image(2, 2) { _, _ -> 0 })
+
+        assertTrue(QoiCodec.isQoi(encoded, encoded.size))
+        assertFalse(QoiCodec.isQoi(encoded, 3))
+        assertFalse(QoiCodec.isQoi(byteArrayOf(0x89.toByte(), 'P'.code.toByte(), 'N'.code.toByte(), 'G'.code.toByte()), 4))
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedImageFails() {
+        val random = Random(3)
+        val encoded = QoiCodec.encode(image(50, 50) { _, _ -> random.nextInt() })
+        QoiCodec.decode(ByteArrayInputStream(encoded.copyOf(encoded.size / 2)))
+    }
+
+    private fun image(width: Int, height: Int, pixel: (Int, Int) -> Int): BufferedImage {
+        val image = BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                image.setRGB(x, y, pixel(x, y))
+            }
+        }
+        return image
+    }
+
+    private fun pixels(image: BufferedImage): IntArray {
+        return image.getRGB(0, 0, image.width, image.height, null, 0, image.width)
+    }
+
+    companion object {
+        private const val HEADER_SIZE = 14
+        private const val END_MARKER_SIZE = 8
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class Utf8StringCacheTest {
+    @Test
+    fun repeatedBytesShareOneString() {
+        val cache = Utf8StringCache()
+        val bytes = "VISIBLE VISIBLE".toByteArray()
+
+        val first = cache.decode(bytes, 0, 7)
+        val second = cache.decode(bytes, 8, 7)
+
+        assertEquals("VISIBLE", first)
+        assertSame(first, second)
+        assertEquals(1, cache.hits)
+        assertEquals(1, cache.misses)
+    }
+
+    @Test
+    fun nonAsciiBytesAreDecodedAsUtf8() {
+        val cache = Utf8StringCache()
+        val text = "héllo ✓ 𝄞"
+        val bytes = text.toByteArray(Charsets.UTF_8)
+
+        assertEquals(text, cache.decode(bytes, 0, bytes.size))
+        assertEquals(text, Utf8StringCache.newString(bytes, 0, bytes.size))
+        assertEquals("", cache.decode(bytes, 3, 0))
+    }
+
+    @Test
+    fun longValuesAreNotCached() {
+        val cache = Utf8StringCache()
+        val bytes = "x".repeat(200).toByteArray()
+
+        val first = cache.decode(bytes, 0, bytes.size)
+        val second = cache.decode(bytes, 0, bytes.size)
+
+        assertEquals(first, second)
+        assertNotSame(first, second)
+        assertEquals(2, cache.misses)
+    }
+
+    @Test
+    fun cachesOfOtherThreadsShareTheStringsOfTheCapture() {
+        val cache = Utf8StringCache()
+        val bytes = "android.widget.TextView".toByteArray()
+        val first = cache.decode(bytes, 0, bytes.size)
+
+        val other = cache.forThread()
+        val second = other.decode(bytes, 0, bytes.size)
+
+        assertSame(first, second)
+        assertEquals(1, other.misses)
+        assertEquals(1, other.sharedHits)
+        cache.addStats(other)
+        assertEquals(2, cache.misses)
+        assertEquals(1, cache.sharedHits)
+    }
+}
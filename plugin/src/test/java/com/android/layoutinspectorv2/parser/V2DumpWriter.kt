@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.model.ViewNode
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+
+/** Writes v2 dumps like ViewHierarchyEncoder, with the string table of the keys at the end. */
+internal class V2DumpWriter {
+    private val mBytes = ByteArrayOutputStream()
+    private val mOut = DataOutputStream(mBytes)
+    private val mKeys = LinkedHashMap<String, Short>()
+
+    fun key(name: String) {
+        val id = mKeys.getOrPut(name) { (mKeys.size + 1).toShort() }
+        mOut.writeByte(ViewNodeV2Decoder.SIG_SHORT.toInt())
+        mOut.writeShort(id.toInt())
+    }
+
+    fun beginView(name: String, hash: Int) {
+        mOut.writeByte(ViewNodeV2Decoder.SIG_MAP.toInt())
+        property("meta:__name__", name)
+        property("meta:__hash__", hash)
+    }
+
+    fun endMap() {
+        mOut.writeByte(ViewNodeV2Decoder.SIG_SHORT.toInt())
+        mOut.writeShort(0)
+    }
+
+    fun property(name: String, value: Any) {
+        key(name)
+        when (value) {
+            is Boolean -> {
+                mOut.writeByte(ViewNodeV2Decoder.SIG_BOOLEAN.toInt())
+                mOut.writeByte(if (value) 1 else 0)
+            }
+            is Int -> {
+                mOut.writeByte(ViewNodeV2Decoder.SIG_INT.toInt())
+                mOut.writeInt(value)
+            }
+            is Float -> {
+                mOut.writeByte(ViewNodeV2Decoder.SIG_FLOAT.toInt())
+                mOut.writeFloat(value)
+            }
+            else -> string(value.toString())
+        }
+    }
+
+    /** The properties the tree and the preview need, see [ViewNodeParser.isRequiredProperty]. */
+    fun layout(id: String, left: Int, top: Int, width: Int, height: Int) {
+        property("id", id)
+        property("layout:left", left)
+        property("layout:top", top)
+        property("layout:width", width)
+        property("layout:height", height)
+        property("drawing:willNotDraw", false)
+        property("misc:visibility", "VISIBLE")
+    }
+
+    private fun string(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        mOut.writeByte(ViewNodeV2Decoder.SIG_STRING.toInt())
+        mOut.writeShort(bytes.size)
+        mOut.write(bytes)
+    }
+
+    fun finish(): ByteArray {
+        mOut.writeByte(ViewNodeV2Decoder.SIG_MAP.toInt())
+        for ((name, id) in mKeys) {
+            mOut.writeByte(ViewNodeV2Decoder.SIG_SHORT.toInt())
+            mOut.writeShort(id.toInt())
+            string(name)
+        }
+        endMap()
+        return mBytes.toByteArray()
+    }
+
+    companion object {
+        /**
+         * A DecorView with a TextView and a FrameLayout holding a View. The children of the
+         * DecorView are written out of order, as the framework may.
+         */
+        fun smallDump(): ByteArray {
+            val writer = V2DumpWriter()
+            writer.beginView("com.android.internal.policy.DecorView", 0x1234)
+            writer.layout("NO_ID", 0, 0, 1080, 1920)
+            writer.property("meta:__childCount__", 2)
+            writer.key("meta:__child__1")
+            writer.beginView("android.widget.FrameLayout", 2)
+            writer.layout("id/content", 0, 100, 1080, 1820)
+            writer.property("meta:__childCount__", 1)
+            writer.key("meta:__child__0")
+            writer.beginView("android.view.View", 3)
+            writer.layout("NO_ID", 0, 0, 10, 10)
+            writer.property("meta:__childCount__", 0)
+            writer.endMap()
+            writer.endMap()
+            writer.key("meta:__child__0")
+            writer.beginView("android.widget.TextView", 1)
+            writer.layout("id/title", 10, 20, 300, 50)
+            writer.property("drawing:alpha", 0.5f)
+            writer.property("focus:isFocused", true)
+            writer.property("text:text", "héllo ✓")
+            writer.property("meta:__childCount__", 0)
+            writer.endMap()
+            writer.endMap()
+            return writer.finish()
+        }
+
+        /** A LinearLayout with [children] TextViews. */
+        fun wideDump(children: Int): ByteArray {
+            val writer = V2DumpWriter()
+            writer.beginView("android.widget.LinearLayout", 0)
+            writer.layout("NO_ID", 0, 0, 1080, 1920)
+            writer.property("meta:__childCount__", children)
+            for (i in 0 until children) {
+                writer.key("meta:__child__$i")
+                writer.beginView("android.widget.TextView", i + 1)
+                writer.layout("id/item", 0, i * 10, 1080, 10)
+                writer.property("text:text", "item $i")
+                writer.property("meta:__childCount__", 0)
+                writer.endMap()
+            }
+            writer.endMap()
+            return writer.finish()
+        }
+
+        /** The names, hashes and properties of the tree of [node], in tree order. */
+        fun describe(node: ViewNode): String {
+            val sb = StringBuilder()
+            fun append(node: ViewNode, depth: Int) {
+                sb.append(depth).append(' ').append(node.name).append('@').append(node.hash)
+                node.properties.sortedBy { it.fullName }.forEach { sb.append(' ').append(it.fullName).append('=').append(it.value) }
+                sb.append('\n')
+                node.children.forEach { append(it, depth + 1) }
+            }
+            append(node, 0)
+            return sb.toString()
+        }
+    }
+}
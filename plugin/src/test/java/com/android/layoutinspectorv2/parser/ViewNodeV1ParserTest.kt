@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import com.android.layoutinspectorv2.PropertyProjection
+import com.android.layoutinspectorv2.model.ViewNode
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ViewNodeV1ParserTest {
+    @Test
+    fun depthComesFromTheLeadingSpaces() {
+        val dump = lines(
+            "DecorView@1 ${p("mID", "NO_ID")}",
+            " LinearLayout@2 ${p("mID", "id/content")}",
+            "  TextView@3 ${p("mID", "id/title")}",
+            "  Button@4 ${p("mID", "id/ok")}",
+            " FrameLayout@5 ${p("mID", "NO_ID")}",
+            "DONE.",
+            "Ignored@6 ${p("mID", "NO_ID")}"
+        )
+
+        val root = parse(dump)!!
+
+        assertEquals("DecorView@1\n LinearLayout@2\n  TextView@3\n  Button@4\n FrameLayout@5\n", tree(root))
+        val content = root.children[0]
+        assertSame(root, content.parent)
+        assertSame(content, content.children[1].parent)
+        assertEquals(1, content.children[1].index)
+        assertEquals("id/title", content.children[0].id)
+    }
+
+    @Test
+    fun propertyLengthsCountUtf16Chars() {
+        val dump = lines(
+            "TextView@3 ${p("mID", "id/title")} ${p("text:mText", "héllo 𝄞 x")} " +
+                    "${p("layout:mLeft", "10")} ${p("layout:getWidth()", "300")}"
+        )
+
+        val root = parse(dump)!!
+
+        assertEquals("TextView", root.name)
+        assertEquals("3", root.hash)
+        assertEquals("héllo 𝄞 x", root.getProperty("text:mText")!!.value)
+        assertEquals("10", root.getProperty("layout:mLeft")!!.value)
+        assertEquals(10, root.displayInfo.left)
+        assertEquals(300, root.displayInfo.width)
+        assertTrue(root.groupedProperties.containsKey("layout"))
+    }
+
+    @Test
+    fun continuationLinesAreMergedIntoTheirView() {
+        // a text with a new line splits the view across two lines (b/79183623)
+        val dump = lines(
+            "DecorView@1 ${p("mID", "NO_ID")}",
+            " TextView@3 text:mText=8,one",
+            "\\ntwo ${p("mID", "id/title")}",
+            " Button@4 ${p("mID", "id/ok")}"
+        )
+
+        val root = parse(dump)!!
+
+        assertEquals(2, root.children.size)
+        val text = root.children[0]
+        assertEquals("one\\ntwo", text.getProperty("text:mText")!!.value)
+        assertEquals("id/title", text.id)
+        assertEquals("id/ok", root.children[1].id)
+    }
+
+    @Test
+    fun carriageReturnsAndBlankLinesAreIgnored() {
+        val dump = "DecorView@1 ${p("mID", "NO_ID")}\r\n\r\n TextView@3 ${p("mID", "id/title")}  \r\nDONE.\r\n"
+            .toByteArray()
+
+        val root = parse(dump)!!
+
+        assertEquals("DecorView@1\n TextView@3\n", tree(root))
+        assertEquals("id/title", root.children[0].id)
+    }
+
+    @Test
+    fun skippedPropertiesAreNotKept() {
+        val dump = lines("TextView@3 ${p("mID", "NO_ID")} ${p("getTag()", "null")} ${p("text:mText", "a")}")
+
+        val root = ViewNodeV1Parser(listOf("getTag()"), PropertyProjection.ALL).parse(dump)!!
+
+        assertNull(root.getProperty("getTag()"))
+        assertEquals("a", root.getProperty("text:mText")!!.value)
+    }
+
+    @Test
+    fun parallelParseMatchesTheSequentialOne() {
+        val dump = largeDump(VIEW_COUNT)
+
+        val sequential = ViewNodeV1Parser(emptyList(), PropertyProjection.ALL).parse(dump)!!
+        val parallel = ViewNodeV1Parser(emptyList(), PropertyProjection.ALL, parallel = true).parse(dump)!!
+
+        assertEquals(tree(sequential), tree(parallel))
+        assertEquals(V2DumpWriter.describe(sequential), V2DumpWriter.describe(parallel))
+        val sequentialNodes = sequential.preOrder()
+        val parallelNodes = parallel.preOrder()
+        assertEquals(VIEW_COUNT, parallelNodes.size)
+        assertEquals("a\\nb", parallelNodes[10].getProperty("text:mText")!!.value)
+        for (i in sequentialNodes.indices) {
+            assertEquals(sequentialNodes[i].id, parallelNodes[i].id)
+            assertEquals(sequentialNodes[i].index, parallelNodes[i].index)
+            assertEquals(sequentialNodes[i].displayInfo, parallelNodes[i].displayInfo)
+        }
+    }
+
+    @Test
+    fun peekRootReadsOnlyTheFirstView() {
+        val dump = lines("", "DecorView@1 ${p("mID", "NO_ID")}", " TextView@3 ${p("mID", "NO_ID")}")
+
+        assertEquals("DecorView@1", ViewNodeV1Parser.peekRoot(dump))
+        assertNull(ViewNodeV1Parser.peekRoot(lines("DONE.")))
+    }
+
+    @Test
+    fun emptyDumpHasNoRoot() {
+        assertNull(parse(lines("DONE.")))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun viewWithoutHashIsRejected() {
+        parse(lines("DecorView ${p("mID", "NO_ID")}"))
+    }
+
+    private fun parse(dump: ByteArray) = ViewNodeV1Parser(emptyList(), PropertyProjection.ALL).parse(dump)
+
+    companion object {
+        // above the parallel threshold of the parser
+        private const val VIEW_COUNT = 3000
+
+        fun p(name: String, value: String) = "$name=${value.length},$value"
+
+        fun lines(vararg lines: String) = lines.joinToString("\n", postfix = "\n").toByteArray()
+
+        /** A root with groups of 9 views, 3 levels deep, and a few continuation lines. */
+        fun largeDump(views: Int): ByteArray {
+            val sb = StringBuilder("DecorView@0 ${p("mID", "NO_ID")}\n")
+            for (i in 1 until views) {
+                val depth = 1 + (i - 1) % 3
+                sb.append(" ".repeat(depth)).append("View").append(depth).append('@').append(Integer.toHexString(i))
+                    .append(' ').append(p("mID", if (i % 4 == 0) "NO_ID" else "id/v${i % 50}"))
+                    .append(' ').append(p("layout:mLeft", "${i % 97}"))
+                    .append(' ').append(p("layout:mTop", "${i % 89}"))
+                    .append(' ').append(p("layout:getWidth()", "${i % 300}"))
+                    .append(' ').append(p("layout:getHeight()", "${i % 200}"))
+                    .append(' ').append(p("misc:getVisibility()", if (i % 7 == 0) "GONE" else "VISIBLE"))
+                if (i % 10 == 0) {
+                    sb.append(" text:mText=4,a\n\\nb ").append(p("bg_", "x"))
+                } else {
+                    sb.append(' ').append(p("text:mText", "t 𝄞 $i"))
+                }
+                sb.append('\n')
+            }
+            return sb.append("DONE.\n").toString().toByteArray()
+        }
+
+        fun ViewNode.preOrder(): List<ViewNode> {
+            val nodes = ArrayList<ViewNode>()
+            fun add(node: ViewNode) {
+                nodes.add(node)
+                node.children.forEach { add(it) }
+            }
+            add(this)
+            return nodes
+        }
+
+        fun tree(node: ViewNode): String {
+            val sb = StringBuilder()
+            fun append(node: ViewNode, depth: Int) {
+                sb.append(" ".repeat(depth)).append(node.name).append('@').append(node.hash).append('\n')
+                node.children.forEach { append(it, depth + 1) }
+            }
+            append(node, 0)
+            return sb.toString()
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.layoutinspectorv2.parser
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class ViewNodeV2ParserTest {
+    @Test
+    fun childrenAreOrderedByTheirIndex() {
+        val root = ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!
+
+        assertEquals("com.android.internal.policy.DecorView", root.name)
+        assertEquals("1234", root.hash)
+        assertEquals(listOf("android.widget.TextView", "android.widget.FrameLayout"), root.children.map { it.name })
+        assertSame(root, root.children[0].parent)
+        val frame = root.children[1]
+        assertEquals(1, frame.children.size)
+        assertSame(frame, frame.children[0].parent)
+        assertTrue(frame.children[0].isLeaf)
+    }
+
+    @Test
+    fun propertiesAreDecodedWithTheNode() {
+        val root = ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!
+        val title = root.children[0]
+
+        assertEquals("id/title", title.id)
+        assertEquals(0.5f, title.getProperty("alpha")!!.getFloat(0f), 0f)
+        assertTrue(title.getProperty("isFocused")!!.getBoolean())
+        assertEquals("héllo ✓", title.getProperty("text")!!.value)
+        assertEquals(10, title.displayInfo.left)
+        assertEquals(20, title.displayInfo.top)
+        assertEquals(300, title.displayInfo.width)
+        // meta properties are hidden from the property groups
+        assertFalse(root.groupedProperties.containsKey("meta"))
+    }
+
+    @Test
+    fun lazyPropertiesMatchTheEagerParse() {
+        val eager = ViewNodeV2Parser().parse(V2DumpWriter.smallDump())!!
+        val lazy = ViewNodeV2Parser(lazyProperties = true).parse(V2DumpWriter.smallDump())!!
+
+        assertFalse(lazy.children[0].isPropertiesLoaded)
+        assertEquals(eager.children[0].id, lazy.children[0].id)
+        assertEquals(eager.children[0].displayInfo, lazy.children[0].displayInfo)
+        assertEquals(V2DumpWriter.describe(eager), V2DumpWriter.describe(lazy))
+        assertTrue(lazy.children[0].isPropertiesLoaded)
+    }
+
+    @Test
+    fun wideViewsKeepTheStreamOrderOfTheirChildren() {
+        val dump = V2DumpWriter.wideDump(CHILD_COUNT)
+
+        val sequential = ViewNodeV2Parser().parse(dump)!!
+        val parallel = ViewNodeV2Parser(parallelChildThreshold = 1).parse(dump)!!
+
+        assertEquals(CHILD_COUNT, parallel.children.size)
+        assertEquals(V2DumpWriter.describe(sequential), V2DumpWriter.describe(parallel))
+        assertTrue(parallel.children.all { it.parent === parallel })
+    }
+
+    @Test
+    fun dumpWithoutViewsHasNoRoot() {
+        // only the string table
+        assertNull(ViewNodeV2Parser().parse(V2DumpWriter().finish()))
+    }
+
+    @Test
+    fun scanFindsTheFirstAndTheLastTopLevelMaps() {
+        val dump = V2DumpWriter.smallDump()
+        val decoder = ViewNodeV2Decoder(ByteBuffer.wrap(dump))
+
+        val (root, table) = decoder.scanTopLevelMaps()!!
+
+        // each map starts right after its signature
+        assertEquals(1, root)
+        assertEquals(ViewNodeV2Decoder.SIG_MAP, dump[table - 1])
+        decoder.position = table
+        decoder.skipMap()
+        assertFalse(decoder.hasRemaining())
+    }
+
+    companion object {
+        // a few fork-join tasks worth of children
+        private const val CHILD_COUNT = 300
+    }
+}